@@ -0,0 +1,222 @@
+/**
+ * AudioOutput.java
+ * -------------------------------------
+ * The sound card end of the playback engine: one {@link SourceDataLine},
+ * opened with a buffer and a write period that can be tuned, and counters
+ * that show how well the writer keeps it fed.
+ *
+ * The buffer is how much audio the line holds: a larger one rides out a
+ * busy machine, a smaller one makes pause, seek and volume respond
+ * sooner. The period is how much the writer hands over at a time. Both
+ * default to 200 ms and 20 ms and can be set with -Dplayer.buffer.ms and
+ * -Dplayer.period.ms, or with {@link #configure}.
+ *
+ * An underrun is counted when a write finds the line's buffer completely
+ * empty, i.e. the card ran out of audio and played silence. Each write
+ * also records how long it blocked and how much audio was queued ahead
+ * of it, which is the latency from writing a sample to hearing it.
+ */
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+
+public class AudioOutput {
+
+    /** Largest period, in bytes; the engine's buffer is this big */
+    static final int MAX_PERIOD = 32 * 1024;
+
+    private volatile int bufferMs = Integer.getInteger("player.buffer.ms", 200);
+    private volatile int periodMs = Integer.getInteger("player.period.ms", 20);
+    // Set when the settings change, so the next open reopens the line
+    private volatile boolean reconfigured;
+
+    // Touched by other threads only to stop, start or flush it
+    private volatile SourceDataLine line;
+    // Whether the line has been fed since it was opened, started or flushed;
+    // an empty buffer before that is not an underrun
+    private volatile boolean primed;
+
+    // Written by the writer thread, read by anyone
+    private volatile long underruns;
+    private volatile long stalls;
+    private volatile long writes;
+    private volatile long blockedNs;
+    private volatile long maxBlockedNs;
+    private volatile long queuedFrames;
+    private volatile long maxLatencyUs;
+
+    /**
+     * Sets the line buffer and write period; takes effect when the line is
+     * next opened, which the engine does at its next write.
+     */
+    public void configure(int bufferMs, int periodMs) {
+        this.bufferMs = Math.max(10, bufferMs);
+        this.periodMs = Math.max(1, Math.min(periodMs, this.bufferMs / 2));
+        reconfigured = true;
+    }
+
+    public int bufferMs() {
+        return bufferMs;
+    }
+
+    public int periodMs() {
+        return periodMs;
+    }
+
+    /** Bytes to hand over per write for a format: whole frames, at most {@link #MAX_PERIOD} */
+    public int periodBytes(AudioFormat f) {
+        int frameSize = f.getFrameSize();
+        int bytes = Math.max(1, (int) (f.getFrameRate() * periodMs / 1000)) * frameSize;
+        return Math.min(bytes, MAX_PERIOD - MAX_PERIOD % frameSize);
+    }
+
+    /**
+     * Makes sure the line is open for a format, reopening it only when the
+     * format or the settings changed. A new line is started. Writer thread only.
+     * @return 0 if the line stayed as it was, 1 if it was (re)opened, -1 if it cannot be opened
+     */
+    int open(AudioFormat f) {
+        SourceDataLine l = line;
+        if (l != null && l.isOpen() && l.getFormat().matches(f) && !reconfigured) {
+            return 0;
+        }
+        if (l != null) {
+            l.drain();
+            l.close();
+            line = null;
+        }
+        reconfigured = false;
+        primed = false;
+        try {
+            l = AudioSystem.getSourceDataLine(f);
+            int bytes = (int) (f.getFrameRate() * bufferMs / 1000) * f.getFrameSize();
+            l.open(f, bytes);
+            l.start();
+            line = l;
+            System.out.println("🔊 Output " + f.getSampleRate() + " Hz, buffer "
+                    + l.getBufferSize() * 1000L / (int) (f.getFrameRate() * f.getFrameSize()) + " ms, period "
+                    + periodMs + " ms");
+            return 1;
+        } catch (LineUnavailableException | IllegalArgumentException ex) {
+            return -1;
+        }
+    }
+
+    /**
+     * Writes audio, blocking while the line's buffer is full. Returns early
+     * if the line is stopped or flushed meanwhile. Writer thread only.
+     * @return bytes written
+     */
+    int write(byte[] buf, int off, int len) {
+        SourceDataLine l = line;
+        int free = l.available();
+        if (primed && l.isRunning() && free >= l.getBufferSize()) {
+            underruns++;
+        }
+        long t0 = System.nanoTime();
+        int n = l.write(buf, off, len);
+        long took = System.nanoTime() - t0;
+        primed = true;
+
+        int frameSize = l.getFormat().getFrameSize();
+        long queued = (l.getBufferSize() - l.available()) / frameSize;
+        long latencyUs = (long) (queued * 1_000_000L / l.getFormat().getFrameRate());
+        writes++;
+        blockedNs += took;
+        queuedFrames += queued;
+        if (took > maxBlockedNs) {
+            maxBlockedNs = took;
+        }
+        if (latencyUs > maxLatencyUs) {
+            maxLatencyUs = latencyUs;
+        }
+        return n;
+    }
+
+    /** Counts a moment the writer had nothing to write while the line played */
+    void stalled() {
+        if (primed) {
+            stalls++;
+        }
+    }
+
+    /** Frames the line has played since it was opened, or -1 if it is not open */
+    long framePosition() {
+        SourceDataLine l = line;
+        return l == null ? -1 : l.getLongFramePosition();
+    }
+
+    /** Format of the open line, or null */
+    AudioFormat format() {
+        SourceDataLine l = line;
+        return l == null ? null : l.getFormat();
+    }
+
+    void stop() {
+        SourceDataLine l = line;
+        if (l != null) {
+            l.stop();
+        }
+    }
+
+    void start() {
+        SourceDataLine l = line;
+        if (l != null) {
+            primed = false;
+            l.start();
+        }
+    }
+
+    /** Drops audio already written; it will not be heard */
+    void flush() {
+        SourceDataLine l = line;
+        if (l != null) {
+            primed = false;
+            l.flush();
+        }
+    }
+
+    /** Waits until everything written has been played */
+    void drain() {
+        SourceDataLine l = line;
+        if (l != null) {
+            l.drain();
+            primed = false;
+        }
+    }
+
+    /** Closes the line; the next open opens a new one */
+    void close() {
+        SourceDataLine l = line;
+        if (l != null) {
+            line = null;
+            l.close();
+        }
+    }
+
+    public long underruns() {
+        return underruns;
+    }
+
+    /** Waits, of about a millisecond each, for a decoder that fell behind */
+    public long stalls() {
+        return stalls;
+    }
+
+    public long writes() {
+        return writes;
+    }
+
+    /** Counters in one line, for logs */
+    public String summary() {
+        long w = Math.max(1, writes);
+        AudioFormat f = format();
+        double meanLatencyMs = f == null ? 0 : queuedFrames / (double) w * 1000 / f.getFrameRate();
+        return String.format("buffer %d ms, period %d ms; %d writes, %d underruns, %d decoder stalls; "
+                + "write blocked %.2f ms on average (max %.1f), latency %.1f ms on average (max %.1f)",
+                bufferMs, periodMs, writes, underruns, stalls, blockedNs / (double) w / 1e6,
+                maxBlockedNs / 1e6, meanLatencyMs, maxLatencyUs / 1000.0);
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * CaptionView.java
+ * -------------------------------------
+ * Shows the lyrics or captions of the playing track in the CC panel's
+ * text area. The sidecar file is read off the EDT when a track starts;
+ * after that the view follows the position reports the engine already
+ * sends, looks up the cue for each one, and only touches the text area
+ * when the cue changes. There is no timer of its own.
+ */
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.swing.JTextArea;
+import javax.swing.SwingUtilities;
+
+public class CaptionView {
+
+    private static final ExecutorService LOADER = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "captions");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final JTextArea area;
+    // EDT only: the playing track's cues, and the cue on display
+    private String track;
+    private TimedText text;
+    private int cue = -1;
+    private long lastMs;
+
+    public CaptionView(JTextArea area) {
+        this.area = area;
+        area.setText("");
+        area.setLineWrap(true);
+        area.setWrapStyleWord(true);
+    }
+
+    /** Loads the cues of a track that started; call on the EDT */
+    public void trackStarted(String path) {
+        track = path;
+        text = null;
+        show(-1);
+        LOADER.execute(() -> {
+            TimedText t;
+            try {
+                t = TimedText.forTrack(path);
+            } catch (IOException | RuntimeException ex) {
+                System.out.println("⚠️ Cannot read lyrics for " + path + ": " + ex.getMessage());
+                return;
+            }
+            if (t != null) {
+                SwingUtilities.invokeLater(() -> {
+                    if (path.equals(track)) {
+                        text = t;
+                        show(t.cueAt(lastMs));
+                    }
+                });
+            }
+        });
+    }
+
+    /** Moves to the cue at a position of the playing track; call on the EDT */
+    public void position(long ms) {
+        lastMs = ms;
+        if (text != null) {
+            show(text.cueAt(ms));
+        }
+    }
+
+    private void show(int c) {
+        if (c != cue) {
+            cue = c;
+            area.setText(text == null ? "" : text.shown(c));
+            area.setCaretPosition(0);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ * CrossfadeMixer.java
+ * -------------------------------------
+ * Mixes the end of one track into the start of the next. The outgoing
+ * track is faded with a cosine and the incoming one with a sine over the
+ * same window; since cos² + sin² = 1 the loudness stays level through the
+ * fade instead of dipping in the middle as it does with straight lines.
+ *
+ * The curve is a precomputed quarter sine, read forwards for the incoming
+ * gain and backwards for the outgoing gain, and the mixer works in buffers
+ * it owns from the start, so mixing allocates nothing.
+ */
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+public class CrossfadeMixer {
+
+    // Points of the quarter sine; gains between points are interpolated
+    private static final int CURVE = 1024;
+    private static final float[] SIN = new float[CURVE + 2];
+
+    static {
+        for (int i = 0; i <= CURVE; i++) {
+            SIN[i] = (float) Math.sin(i * Math.PI / 2 / CURVE);
+        }
+        SIN[CURVE + 1] = 1f;
+    }
+
+    private final ShortBuffer inView;
+    private final ShortBuffer outView;
+    private final byte[] outBytes;
+    private final short[] in;
+    private final short[] out;
+
+    // Fade progress in frames; only the audio thread touches it
+    private long pos;
+    private long length;
+
+    /** @param chunk the buffer holding the incoming track's audio */
+    public CrossfadeMixer(byte[] chunk) {
+        inView = ByteBuffer.wrap(chunk).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+        outBytes = new byte[chunk.length];
+        outView = ByteBuffer.wrap(outBytes).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+        in = new short[chunk.length / 2];
+        out = new short[chunk.length / 2];
+    }
+
+    /**
+     * Starts a fade.
+     * @param frames length of the whole fade
+     * @param startAt how far into the fade to begin, 0 to 1; a fade that
+     *        takes over from an unfinished one starts where its gains match
+     */
+    public void start(long frames, double startAt) {
+        length = Math.max(1, frames);
+        pos = (long) (Math.max(0, Math.min(1, startAt)) * length);
+    }
+
+    /** How far the fade has come, 0 to 1 */
+    public double progress() {
+        return length == 0 ? 1 : (double) pos / length;
+    }
+
+    public boolean isDone() {
+        return pos >= length;
+    }
+
+    /**
+     * Mixes the outgoing track's next bytes into the incoming audio in the
+     * chunk. Where the outgoing track has run out it counts as silence.
+     * @param len bytes of incoming 16-bit PCM at the start of the chunk
+     * @param outLevel leveling gain of the outgoing track, which it keeps
+     *        through the fade; the incoming audio is already leveled
+     * @return true once the fade has run its length
+     */
+    public boolean mix(int len, PcmRing outgoing, int channels, float outLevel) {
+        int got = outgoing.read(outBytes, 0, len);
+        int count = len / 2;
+        int outCount = got / 2;
+        inView.position(0);
+        inView.get(in, 0, count);
+        outView.position(0);
+        outView.get(out, 0, outCount);
+
+        for (int i = 0; i < count; i += channels) {
+            // Position on the curve, in 1/CURVE steps with a fraction
+            float x = pos >= length ? CURVE : (float) pos * CURVE / length;
+            int k = (int) x;
+            float frac = x - k;
+            float gIn = SIN[k] + (SIN[k + 1] - SIN[k]) * frac;
+            int j = CURVE - k;
+            float gOut = j <= 0 ? 0f : (SIN[j] + (SIN[j - 1] - SIN[j]) * frac) * outLevel;
+            for (int c = 0; c < channels; c++) {
+                int o = i + c < outCount ? out[i + c] : 0;
+                int m = (int) (in[i + c] * gIn + o * gOut);
+                in[i + c] = (short) (m > Short.MAX_VALUE ? Short.MAX_VALUE : m < Short.MIN_VALUE ? Short.MIN_VALUE : m);
+            }
+            pos++;
+        }
+
+        inView.position(0);
+        inView.put(in, 0, count);
+        return pos >= length;
+    }
+}
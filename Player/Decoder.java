@@ -0,0 +1,50 @@
+/**
+ * Decoder.java
+ * -------------------------------------
+ * Turns one audio file into signed 16-bit little endian PCM for the
+ * playback engine. A decoder writes straight into the buffer it is given,
+ * which the engine takes from {@link PcmPool}, so a steady decode loop
+ * allocates nothing. Decoders are found through {@link Decoders}.
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import javax.sound.sampled.AudioFormat;
+
+public interface Decoder extends Closeable {
+
+    /** Format of the decoded bytes: signed 16-bit little endian PCM */
+    AudioFormat format();
+
+    /**
+     * Decodes the next bytes into the caller's buffer.
+     * @return number of bytes, always whole frames, or -1 at the end
+     */
+    int read(byte[] buf, int off, int len) throws IOException;
+
+    /** Decoded frames at the start that are encoder or decoder padding */
+    default long leadingFrames() {
+        return 0;
+    }
+
+    /** Frames of real audio after the leading ones, or -1 to play to the end */
+    default long audioFrames() {
+        return -1;
+    }
+
+    /**
+     * Moves so the next read starts at a frame, counted from the first
+     * decoded frame (leading padding included).
+     * @return false if this decoder cannot seek; it is then left where it was
+     */
+    default boolean seek(long frame) throws IOException {
+        return false;
+    }
+
+    /**
+     * Called when the track is about to be played, as opposed to scanned,
+     * so the decoder can get ready to seek quickly.
+     */
+    default void prepareSeeking() {
+    }
+}
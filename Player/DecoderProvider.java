@@ -0,0 +1,23 @@
+/**
+ * DecoderProvider.java
+ * -------------------------------------
+ * Plug-in point for audio formats. A provider says which files it handles,
+ * opens a {@link Decoder} for one, and reads its tags and duration without
+ * decoding the audio. Besides the built-in MP3 and WAV providers, classes
+ * listed in META-INF/services/DecoderProvider on the classpath are picked
+ * up by {@link Decoders}.
+ */
+
+import java.io.IOException;
+
+public interface DecoderProvider {
+
+    /** True if the file name has an extension this provider reads */
+    boolean canDecode(String name);
+
+    /** Opens a file for decoding from its first sample */
+    Decoder open(String path) throws IOException;
+
+    /** Reads tags and duration for the library */
+    TrackInfo readInfo(String path) throws IOException;
+}
@@ -0,0 +1,68 @@
+/**
+ * Decoders.java
+ * -------------------------------------
+ * Finds the {@link DecoderProvider} for a file by its extension. Providers
+ * registered through {@link ServiceLoader} come first, so a plug-in can
+ * take over a format from the built-in MP3 and WAV decoders.
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+public class Decoders {
+
+    private static final DecoderProvider[] PROVIDERS = load();
+
+    private Decoders() {
+    }
+
+    private static DecoderProvider[] load() {
+        List<DecoderProvider> list = new ArrayList<>();
+        try {
+            for (DecoderProvider p : ServiceLoader.load(DecoderProvider.class)) {
+                list.add(p);
+            }
+        } catch (ServiceConfigurationError ex) {
+            System.out.println("⚠️ Decoder plug-in not loaded: " + ex.getMessage());
+        }
+        list.add(new Mp3Decoder.Provider());
+        list.add(new WavDecoder.Provider());
+        return list.toArray(new DecoderProvider[0]);
+    }
+
+    /** Provider for a file name, or null if no decoder reads it */
+    static DecoderProvider find(String name) {
+        for (DecoderProvider p : PROVIDERS) {
+            if (p.canDecode(name)) {
+                return p;
+            }
+        }
+        return null;
+    }
+
+    /** True if some decoder reads files with this name */
+    public static boolean canDecode(String name) {
+        return find(name) != null;
+    }
+
+    /** Opens a file with the first provider that reads it */
+    public static Decoder open(String path) throws IOException {
+        DecoderProvider p = find(path);
+        if (p == null) {
+            throw new IOException("No decoder for " + path);
+        }
+        return p.open(path);
+    }
+
+    /** Reads tags and duration with the first provider that reads the file */
+    public static TrackInfo readInfo(String path) throws IOException {
+        DecoderProvider p = find(path);
+        if (p == null) {
+            throw new IOException("No decoder for " + path);
+        }
+        return p.readInfo(path);
+    }
+}
@@ -0,0 +1,45 @@
+/**
+ * FilteredListModel.java
+ * -------------------------------------
+ * List model over the tracks matching the playlist filter. It only holds
+ * their ids; names are looked up when the list paints a row, and a new
+ * result is announced as a change of the rows that differ in count, so the
+ * list never copies the names of the whole playlist.
+ */
+
+import javax.swing.AbstractListModel;
+
+public class FilteredListModel extends AbstractListModel<String> implements TrackRows {
+
+    private int[] ids = new int[0];
+
+    /** Replaces the rows with the given track ids */
+    public void setIds(int[] next) {
+        int old = ids.length;
+        ids = next;
+        if (next.length < old) {
+            fireIntervalRemoved(this, next.length, old - 1);
+        } else if (next.length > old) {
+            fireIntervalAdded(this, old, next.length - 1);
+        }
+        int common = Math.min(old, next.length);
+        if (common > 0) {
+            fireContentsChanged(this, 0, common - 1);
+        }
+    }
+
+    @Override
+    public int idAt(int row) {
+        return ids[row];
+    }
+
+    @Override
+    public int getSize() {
+        return ids.length;
+    }
+
+    @Override
+    public String getElementAt(int row) {
+        return Player.displayName(ids[row]);
+    }
+}
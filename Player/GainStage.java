@@ -0,0 +1,194 @@
+/**
+ * GainStage.java
+ * -------------------------------------
+ * Volume and mute for the PCM the engine plays. Changes never jump: the
+ * gain glides to its new value over {@link #RAMP_MS}, so moving the slider
+ * or muting does not click. The engine uses a second stage for the
+ * leveling gain that evens out the loudness from track to track; that
+ * gain can be above 1, so samples are clipped at full scale.
+ *
+ * The audio is 16-bit little endian bytes. They are copied into an array
+ * through a little endian view of the engine's chunk (a bulk copy, not a
+ * loop over bytes), scaled there by a fixed point multiply, and copied
+ * back. At full volume the samples are not touched at all.
+ *
+ * A gain of at most 1 cannot overflow, so that multiply needs no clamp.
+ * The JIT of JDK 17 still does not vectorize it over a short array, since
+ * the product needs 32-bit lanes, so a steady volume below full reads the
+ * chunk as ints holding two samples each and scales both halves in int
+ * arithmetic, which it does vectorize: about 0.1 ns a sample against
+ * 0.55 ns with -XX:-UseSuperWord, where the short loop takes 0.45 ns
+ * either way (bench/GainStageBench). Glides and leveling gains above 1
+ * use the short array, the latter with a clamp.
+ */
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+public class GainStage {
+
+    /** Time for the gain to travel from full volume to silence */
+    static final int RAMP_MS = 10;
+    // Slider positions span this many decibels below full volume
+    private static final float RANGE_DB = 60f;
+
+    private final ShortBuffer view;
+    private final short[] samples;
+    // The same chunk as pairs of samples, low one first
+    private final IntBuffer pairView;
+    private final int[] pairs;
+
+    // Set from the EDT, read by the audio thread at every chunk
+    private volatile float target = 1f;
+    private volatile boolean muted;
+    // Loudness leveling of the track playing
+    private volatile float level = 1f;
+
+    // Gain applied to the last frame; audio thread only
+    private float gain = 1f;
+
+    /** @param chunk the byte buffer {@link #process} will work on */
+    public GainStage(byte[] chunk) {
+        view = ByteBuffer.wrap(chunk).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+        samples = new short[chunk.length / 2];
+        pairView = ByteBuffer.wrap(chunk).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        pairs = new int[chunk.length / 4];
+    }
+
+    /** Linear gain for a slider position, 0 to 100, on a decibel scale */
+    public static float gainFor(int percent) {
+        if (percent <= 0) {
+            return 0f;
+        }
+        if (percent >= 100) {
+            return 1f;
+        }
+        return (float) Math.pow(10, (percent - 100) * RANGE_DB / 100 / 20);
+    }
+
+    /** Sets the volume as a linear gain from 0 to 1 */
+    public void setGain(float g) {
+        target = Math.max(0f, Math.min(1f, g));
+    }
+
+    public float getGain() {
+        return target;
+    }
+
+    /**
+     * Sets the leveling gain, applied on top of the volume and glided to
+     * like it; it may be above 1 for quiet tracks. Samples it would take
+     * past full scale are clipped.
+     */
+    public void setLevel(float l) {
+        level = Math.max(0f, l);
+    }
+
+    /**
+     * Sets the leveling gain without a glide, for the first samples of a
+     * new track: they must not get the previous track's level. Audio thread only.
+     */
+    void jumpToLevel(float l) {
+        level = Math.max(0f, l);
+        gain = muted ? 0f : target * level;
+    }
+
+    public void setMuted(boolean m) {
+        muted = m;
+    }
+
+    public boolean isMuted() {
+        return muted;
+    }
+
+    /**
+     * Applies the gain in place to the first bytes of the chunk.
+     * Audio thread only.
+     * @param len bytes of 16-bit PCM, whole frames
+     */
+    public void process(int len, int channels, float rate) {
+        float t = muted ? 0f : target * level;
+        if (gain == t && t == 1f) {
+            return;
+        }
+        if (gain == t && t > 0f && t < 1f) {
+            scalePairs(len, Math.round(t * 32768));
+            return;
+        }
+        int count = len / 2;
+        view.position(0);
+        view.get(samples, 0, count);
+
+        int i = 0;
+        if (gain != t) {
+            // Glide a little per frame; all channels of a frame get the same gain
+            float step = 1000f / (rate * RAMP_MS);
+            while (i < count && gain != t) {
+                gain = gain < t ? Math.min(t, gain + step) : Math.max(t, gain - step);
+                for (int c = 0; c < channels; c++) {
+                    int v = (int) (samples[i + c] * gain);
+                    samples[i + c] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, v));
+                }
+                i += channels;
+            }
+        }
+        if (i < count) {
+            if (t == 0f) {
+                Arrays.fill(samples, i, count, (short) 0);
+            } else if (t != 1f) {
+                scale(samples, i, count, Math.round(t * 32768));
+            }
+        }
+
+        view.position(0);
+        view.put(samples, 0, count);
+    }
+
+    /** Scales a chunk two samples at a time, for a steady gain below 1 */
+    private void scalePairs(int len, int q15) {
+        int n = len / 4;
+        pairView.position(0);
+        pairView.get(pairs, 0, n);
+        scalePairs(pairs, 0, n, q15);
+        pairView.position(0);
+        pairView.put(pairs, 0, n);
+        if (len % 4 != 0) {
+            // Odd sample count, mono only
+            int last = len / 2 - 1;
+            view.put(last, (short) ((view.get(last) * q15) >> 15));
+        }
+    }
+
+    /**
+     * Multiplies both 16-bit samples packed in each int by q15 / 32768,
+     * which must be at most 1. Only int arithmetic, so the JIT vectorizes it.
+     */
+    static void scalePairs(int[] p, int from, int to, int q15) {
+        for (int i = from; i < to; i++) {
+            int v = p[i];
+            int lo = (v << 16) >> 16;
+            int hi = v >> 16;
+            p[i] = (((lo * q15) >> 15) & 0xFFFF) | (((hi * q15) >> 15) << 16);
+        }
+    }
+
+    /**
+     * Multiplies samples by q15 / 32768, clipping at full scale.
+     */
+    static void scale(short[] s, int from, int to, int q15) {
+        if (q15 <= 32768) {
+            // A gain of at most 1 cannot leave the short range, and a loop
+            // without the clamp is one the JIT can vectorize
+            for (int i = from; i < to; i++) {
+                s[i] = (short) ((s[i] * q15) >> 15);
+            }
+            return;
+        }
+        for (int i = from; i < to; i++) {
+            s[i] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, (s[i] * q15) >> 15));
+        }
+    }
+}
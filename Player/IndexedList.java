@@ -0,0 +1,374 @@
+/**
+ * IndexedList.java
+ * -------------------------------------
+ * A list of ints backed by an implicit treap: a randomly balanced binary
+ * tree in which every node knows the size of its subtree, so a position is
+ * found by walking down from the root. Reading, inserting, removing or
+ * moving an entry at any position costs O(log n) instead of the O(n)
+ * element shifting of an {@link java.util.ArrayList}, which keeps
+ * reordering fast for playlists with millions of entries.
+ *
+ * Nodes are slots in parallel int arrays rather than objects, and entries
+ * are not boxed, so an entry costs 20 bytes instead of a node object plus
+ * an Integer. Removed slots are reused by later inserts.
+ */
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+public class IndexedList {
+
+    // Slot 0 stands for the empty tree: it has size 0 and is never an entry
+    private static final int NIL = 0;
+
+    private final SplittableRandom random = new SplittableRandom();
+
+    // Per node, indexed by slot
+    private int[] value;
+    private int[] priority;
+    private int[] size;
+    private int[] left;
+    private int[] right;
+    // Slots at and above this were never used
+    private int used;
+    // Removed slots, chained through left
+    private int free;
+    private int root;
+    // Results of delete and split, which would otherwise need an out array
+    private int taken;
+    private int splitLeft;
+    private int splitRight;
+
+    public IndexedList() {
+        reset(16);
+    }
+
+    /** Builds a list holding the given entries in order, in O(n) */
+    public IndexedList(int[] items) {
+        replaceAll(items);
+    }
+
+    public int size() {
+        return size[root];
+    }
+
+    public boolean isEmpty() {
+        return root == NIL;
+    }
+
+    public int get(int index) {
+        return value[node(index)];
+    }
+
+    public int set(int index, int v) {
+        int n = node(index);
+        int old = value[n];
+        value[n] = v;
+        return old;
+    }
+
+    /** Appends one entry */
+    public void add(int v) {
+        add(size(), v);
+    }
+
+    public void add(int index, int v) {
+        if (index < 0 || index > size()) {
+            throw new IndexOutOfBoundsException("Index " + index + ", size " + size());
+        }
+        root = insert(root, index, newNode(v));
+    }
+
+    /** Appends all the entries in order, in O(k + log n) for k new entries */
+    public void addAll(int[] items) {
+        if (items.length == 0) {
+            return;
+        }
+        ensureCapacity(used + items.length);
+        int tail = build(items, 0, items.length, used);
+        used += items.length;
+        heapify(tail);
+        root = merge(root, tail);
+    }
+
+    /** Removes the entry at a position and returns it */
+    public int remove(int index) {
+        checkIndex(index);
+        root = delete(root, index);
+        int n = taken;
+        left[n] = free;
+        free = n;
+        return value[n];
+    }
+
+    /**
+     * Moves one entry to a new position; the entries in between shift by one.
+     * @param from current index
+     * @param to index the entry has after the move
+     */
+    public void move(int from, int to) {
+        checkIndex(from);
+        checkIndex(to);
+        if (from == to) {
+            return;
+        }
+        root = delete(root, from);
+        int n = taken;
+        left[n] = NIL;
+        right[n] = NIL;
+        size[n] = 1;
+        root = insert(root, to, n);
+    }
+
+    public void clear() {
+        reset(16);
+    }
+
+    /** Replaces the whole content with the given entries, in O(n) */
+    public void replaceAll(int[] items) {
+        reset(items.length + 1);
+        root = build(items, 0, items.length, used);
+        used += items.length;
+        heapify(root);
+    }
+
+    /** Position of the first entry equal to v, or -1 */
+    public int indexOf(int v) {
+        int[] stack = new int[64];
+        int depth = 0;
+        int i = 0;
+        for (int n = root; n != NIL || depth > 0; ) {
+            if (n != NIL) {
+                if (depth == stack.length) {
+                    stack = Arrays.copyOf(stack, depth * 2);
+                }
+                stack[depth++] = n;
+                n = left[n];
+            } else {
+                n = stack[--depth];
+                if (value[n] == v) {
+                    return i;
+                }
+                i++;
+                n = right[n];
+            }
+        }
+        return -1;
+    }
+
+    /** Copies the entries in order */
+    public int[] toArray() {
+        int[] out = new int[size()];
+        int[] stack = new int[64];
+        int depth = 0;
+        int i = 0;
+        for (int n = root; n != NIL || depth > 0; ) {
+            if (n != NIL) {
+                if (depth == stack.length) {
+                    stack = Arrays.copyOf(stack, depth * 2);
+                }
+                stack[depth++] = n;
+                n = left[n];
+            } else {
+                n = stack[--depth];
+                out[i++] = value[n];
+                n = right[n];
+            }
+        }
+        return out;
+    }
+
+    // ---- slots ----
+
+    /** Drops all entries and makes room for the given number of slots */
+    private void reset(int capacity) {
+        capacity = Math.max(capacity, 2);
+        value = new int[capacity];
+        priority = new int[capacity];
+        size = new int[capacity];
+        left = new int[capacity];
+        right = new int[capacity];
+        used = 1;
+        free = NIL;
+        root = NIL;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= value.length) {
+            return;
+        }
+        int cap = Math.max(capacity, value.length * 2);
+        value = Arrays.copyOf(value, cap);
+        priority = Arrays.copyOf(priority, cap);
+        size = Arrays.copyOf(size, cap);
+        left = Arrays.copyOf(left, cap);
+        right = Arrays.copyOf(right, cap);
+    }
+
+    /** A detached node holding v, in a removed slot if there is one */
+    private int newNode(int v) {
+        int n;
+        if (free != NIL) {
+            n = free;
+            free = left[n];
+        } else {
+            ensureCapacity(used + 1);
+            n = used++;
+        }
+        value[n] = v;
+        priority[n] = random.nextInt();
+        size[n] = 1;
+        left[n] = NIL;
+        right[n] = NIL;
+        return n;
+    }
+
+    // ---- tree operations ----
+
+    private void update(int n) {
+        size[n] = 1 + size[left[n]] + size[right[n]];
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index " + index + ", size " + size());
+        }
+    }
+
+    private int node(int index) {
+        checkIndex(index);
+        int n = root;
+        while (true) {
+            int l = size[left[n]];
+            if (index < l) {
+                n = left[n];
+            } else if (index == l) {
+                return n;
+            } else {
+                index -= l + 1;
+                n = right[n];
+            }
+        }
+    }
+
+    /** Inserts a detached node so that it ends up at the given index */
+    private int insert(int t, int index, int n) {
+        if (t == NIL) {
+            return n;
+        }
+        if (priority[n] > priority[t]) {
+            split(t, index);
+            left[n] = splitLeft;
+            right[n] = splitRight;
+            update(n);
+            return n;
+        }
+        int l = size[left[t]];
+        if (index <= l) {
+            left[t] = insert(left[t], index, n);
+        } else {
+            right[t] = insert(right[t], index - l - 1, n);
+        }
+        update(t);
+        return t;
+    }
+
+    /** Removes the node at the given index and leaves it in {@code taken} */
+    private int delete(int t, int index) {
+        int l = size[left[t]];
+        if (index == l) {
+            taken = t;
+            return merge(left[t], right[t]);
+        }
+        if (index < l) {
+            left[t] = delete(left[t], index);
+        } else {
+            right[t] = delete(right[t], index - l - 1);
+        }
+        update(t);
+        return t;
+    }
+
+    /** Splits into the first {@code count} entries (splitLeft) and the rest (splitRight) */
+    private void split(int t, int count) {
+        if (t == NIL) {
+            splitLeft = NIL;
+            splitRight = NIL;
+            return;
+        }
+        int l = size[left[t]];
+        if (count <= l) {
+            split(left[t], count);
+            left[t] = splitRight;
+            update(t);
+            splitRight = t;
+        } else {
+            split(right[t], count - l - 1);
+            right[t] = splitLeft;
+            update(t);
+            splitLeft = t;
+        }
+    }
+
+    private int merge(int a, int b) {
+        if (a == NIL) {
+            return b;
+        }
+        if (b == NIL) {
+            return a;
+        }
+        if (priority[a] > priority[b]) {
+            right[a] = merge(right[a], b);
+            update(a);
+            return a;
+        }
+        left[b] = merge(a, left[b]);
+        update(b);
+        return b;
+    }
+
+    /** Builds a perfectly balanced tree over items[from, to) in the slots from base on */
+    private int build(int[] items, int from, int to, int base) {
+        if (from >= to) {
+            return NIL;
+        }
+        int mid = (from + to) >>> 1;
+        int n = base + mid;
+        value[n] = items[mid];
+        priority[n] = random.nextInt();
+        left[n] = build(items, from, mid, base);
+        right[n] = build(items, mid + 1, to, base);
+        update(n);
+        return n;
+    }
+
+    /** Restores the heap order of priorities without changing the shape */
+    private void heapify(int n) {
+        if (n == NIL) {
+            return;
+        }
+        heapify(left[n]);
+        heapify(right[n]);
+        siftDown(n);
+    }
+
+    private void siftDown(int n) {
+        while (true) {
+            int top = n;
+            if (left[n] != NIL && priority[left[n]] > priority[top]) {
+                top = left[n];
+            }
+            if (right[n] != NIL && priority[right[n]] > priority[top]) {
+                top = right[n];
+            }
+            if (top == n) {
+                return;
+            }
+            // Swap priorities only; entries and shape stay where they are
+            int p = priority[n];
+            priority[n] = priority[top];
+            priority[top] = p;
+            n = top;
+        }
+    }
+}
@@ -0,0 +1,261 @@
+/**
+ * LibraryCatalog.java
+ * -------------------------------------
+ * Compact on-disk copy of the library so it can be shown straight away on
+ * the next start instead of after a full folder scan.
+ *
+ * File layout (big endian):
+ * <pre>
+ *   header   magic, version, track count, root count      (4 ints)
+ *   records  size, mtime, durationMs, path, title,
+ *            artist, album, flags, loudness, peak,
+ *            loudness blocks                              (RECORD_SIZE bytes each)
+ *            flags bit 0: tags have been read
+ *            flags bit 1: loudness has been measured
+ *   roots    string offset per library root               (1 int each)
+ *   strings  unsigned short length + UTF-8 bytes
+ * </pre>
+ * String fields in records and roots are offsets into the string area.
+ * Version 1 catalogs, whose records end at the flags, are still read.
+ * The file is opened with {@link FileChannel#map}, so only the entries that
+ * are actually read are paged in.
+ */
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.function.IntFunction;
+
+public class LibraryCatalog {
+
+    static final int MAGIC = 0x504C4341; // "PLCA"
+    static final int VERSION = 2;
+    static final int HEADER_SIZE = 16;
+    static final int RECORD_SIZE = 52;
+    // Records of version 1, before loudness was stored
+    static final int RECORD_SIZE_V1 = 40;
+    static final int MAX_STRING = 0xFFFF;
+    static final int FLAG_TAGGED = 1;
+    static final int FLAG_ANALYZED = 2;
+
+    /** Default catalog location in the user's home folder */
+    static final Path DEFAULT_FILE =
+            Paths.get(System.getProperty("user.home"), ".project-player", "library.cat");
+
+    private final MappedByteBuffer buf;
+    private final int recordSize;
+    private final int count;
+    private final int rootCount;
+    private final int rootsStart;
+    private final int stringsStart;
+
+    private LibraryCatalog(MappedByteBuffer buf) throws IOException {
+        this.buf = buf;
+        if (buf.limit() < HEADER_SIZE || buf.getInt(0) != MAGIC) {
+            throw new IOException("Not a library catalog");
+        }
+        int version = buf.getInt(4);
+        if (version != VERSION && version != 1) {
+            throw new IOException("Unsupported catalog version " + version);
+        }
+        recordSize = version == 1 ? RECORD_SIZE_V1 : RECORD_SIZE;
+        count = buf.getInt(8);
+        rootCount = buf.getInt(12);
+        // In longs, so that a corrupt count cannot wrap around the check
+        long roots = HEADER_SIZE + (long) count * recordSize;
+        long strings = roots + rootCount * 4L;
+        if (count < 0 || rootCount < 0 || strings > buf.limit()) {
+            throw new IOException("Truncated library catalog");
+        }
+        rootsStart = (int) roots;
+        stringsStart = (int) strings;
+    }
+
+    /**
+     * Maps an existing catalog file.
+     * @return the catalog, or null if there is none yet
+     */
+    public static LibraryCatalog open(Path file) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel is closed
+            return new LibraryCatalog(ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()));
+        }
+    }
+
+    /** Number of tracks in the catalog */
+    public int size() {
+        return count;
+    }
+
+    public int rootCount() {
+        return rootCount;
+    }
+
+    public String root(int i) {
+        return string(buf.getInt(rootsStart + i * 4));
+    }
+
+    public String path(int i) {
+        return string(buf.getInt(record(i) + 20));
+    }
+
+    public long fileSize(int i) {
+        return buf.getLong(record(i));
+    }
+
+    public long mtime(int i) {
+        return buf.getLong(record(i) + 8);
+    }
+
+    /** Builds the full library entry for a track, tags included */
+    public TrackInfo info(int i) {
+        int r = record(i);
+        TrackInfo t = new TrackInfo(buf.getLong(r), buf.getLong(r + 8));
+        t.durationMs = buf.getInt(r + 16);
+        t.title = string(buf.getInt(r + 24));
+        t.artist = string(buf.getInt(r + 28));
+        t.album = string(buf.getInt(r + 32));
+        int flags = buf.getInt(r + 36);
+        t.tagged = (flags & FLAG_TAGGED) != 0;
+        if ((flags & FLAG_ANALYZED) != 0 && recordSize == RECORD_SIZE) {
+            t.analyzed = true;
+            t.loudness = buf.getFloat(r + 40);
+            t.peak = buf.getFloat(r + 44);
+            t.loudnessBlocks = buf.getInt(r + 48);
+        }
+        return t;
+    }
+
+    private int record(int i) {
+        if (i < 0 || i >= count) {
+            throw new IndexOutOfBoundsException("Track " + i + " of " + count);
+        }
+        return HEADER_SIZE + i * recordSize;
+    }
+
+    private String string(int offset) {
+        int pos = stringsStart + offset;
+        int len = buf.getShort(pos) & 0xFFFF;
+        byte[] bytes = new byte[len];
+        buf.get(pos + 2, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes a new catalog next to the old one and swaps it in, atomically
+     * where the old one can be replaced while it is mapped.
+     * @param count number of tracks
+     * @param pathAt path of the i-th track in playlist order
+     * @param infoAt library entry of the i-th track; null entries are stored without tags
+     * @param roots library root folders
+     */
+    public static void write(Path file, int count, IntFunction<String> pathAt,
+            IntFunction<TrackInfo> infoAt, List<String> roots) throws IOException {
+        Files.createDirectories(file.getParent());
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+
+        long stringsStart = HEADER_SIZE + (long) count * RECORD_SIZE + roots.size() * 4L;
+        ByteBuffer head = ByteBuffer.allocate((int) stringsStart);
+        head.putInt(MAGIC).putInt(VERSION).putInt(count).putInt(roots.size());
+
+        try {
+            try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                ch.position(stringsStart);
+                StringWriter strings = new StringWriter(
+                        new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(ch), 1 << 16)));
+
+                for (int i = 0; i < count; i++) {
+                    String path = pathAt.apply(i);
+                    TrackInfo t = infoAt.apply(i);
+                    if (t == null) {
+                        head.putLong(-1).putLong(-1).putInt(0)
+                            .putInt(strings.add(path)).putInt(strings.add(""))
+                            .putInt(strings.add("")).putInt(strings.add("")).putInt(0)
+                            .putFloat(Float.NaN).putFloat(0).putInt(0);
+                    } else {
+                        head.putLong(t.size).putLong(t.mtime).putInt(t.durationMs)
+                            .putInt(strings.add(path)).putInt(strings.add(t.title))
+                            .putInt(strings.add(t.artist)).putInt(strings.add(t.album))
+                            .putInt((t.tagged ? FLAG_TAGGED : 0) | (t.analyzed ? FLAG_ANALYZED : 0))
+                            .putFloat(t.loudness).putFloat(t.peak).putInt(t.loudnessBlocks);
+                    }
+                }
+                for (String root : roots) {
+                    head.putInt(strings.add(root));
+                }
+                strings.out.flush();
+
+                head.flip();
+                long pos = 0;
+                while (head.hasRemaining()) {
+                    pos += ch.write(head, pos);
+                }
+            }
+        } catch (IOException | RuntimeException ex) {
+            // Leave no half-written file behind
+            Files.deleteIfExists(tmp);
+            throw ex;
+        }
+        try {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            if (!Files.exists(file)) {
+                throw ex;
+            }
+            // Windows will not replace a file that is still mapped, as the
+            // catalog being validated is, and Java cannot unmap it on
+            // demand. Renaming it is allowed, so move it aside first.
+            Path old = file.resolveSibling(file.getFileName() + ".old");
+            Files.move(file, old, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(tmp, file);
+            try {
+                Files.deleteIfExists(old);
+            } catch (IOException stillMapped) {
+                // replaced at the next save
+            }
+        }
+    }
+
+    /** Appends strings to the string area, sharing the empty string */
+    private static class StringWriter {
+
+        final DataOutputStream out;
+        int offset;
+        int emptyOffset = -1;
+
+        StringWriter(DataOutputStream out) {
+            this.out = out;
+        }
+
+        int add(String s) throws IOException {
+            if (s.isEmpty() && emptyOffset >= 0) {
+                return emptyOffset;
+            }
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            int len = Math.min(bytes.length, MAX_STRING);
+            int at = offset;
+            out.writeShort(len);
+            out.write(bytes, 0, len);
+            offset += 2 + len;
+            if (s.isEmpty()) {
+                emptyOffset = at;
+            }
+            return at;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+/**
+ * LibraryScanner.java
+ * -------------------------------------
+ * Walks a whole directory tree in parallel and streams the audio files it
+ * finds to a sink in batches, so very large libraries can be shown while
+ * the scan is still running.
+ *
+ * Every directory is a fork-join task; files found in it are handed to a
+ * shared batcher which delivers them once {@link #BATCH_SIZE} paths have
+ * piled up. A scan can be cancelled at any time and reports its own
+ * throughput in files per second.
+ */
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+public class LibraryScanner {
+
+    /** Number of paths delivered to the sink at once */
+    static final int BATCH_SIZE = 512;
+
+    // Shared by all scans; the default factory makes daemon workers
+    private static final ForkJoinPool POOL =
+            new ForkJoinPool(Math.max(2, Runtime.getRuntime().availableProcessors()));
+
+    private final Consumer<List<String>> sink;
+    private final AtomicBoolean cancelled = new AtomicBoolean();
+    private final AtomicLong found = new AtomicLong();
+    private final AtomicLong dirs = new AtomicLong();
+
+    private List<String> batch = new ArrayList<>(BATCH_SIZE);
+    private Runnable onFinish;
+    private Consumer<Path> onDirectory;
+    private volatile boolean done;
+    private volatile long startNanos;
+    private volatile long endNanos;
+
+    /**
+     * @param sink receives batches of absolute paths; called from worker threads
+     */
+    public LibraryScanner(Consumer<List<String>> sink) {
+        this.sink = sink;
+    }
+
+    /** Sets a callback run on the worker thread once the scan ends or is cancelled */
+    public void setOnFinish(Runnable onFinish) {
+        this.onFinish = onFinish;
+    }
+
+    /** Sets a callback run on the worker thread for every directory, just before it is listed */
+    public void setOnDirectory(Consumer<Path> onDirectory) {
+        this.onDirectory = onDirectory;
+    }
+
+    /**
+     * Starts scanning the tree below the given folder and returns immediately.
+     * @param root directory to scan recursively
+     */
+    public void scan(String root) {
+        Path start = Paths.get(root);
+        startNanos = System.nanoTime();
+        POOL.execute(() -> {
+            try {
+                new DirTask(start).invoke();
+                flush();
+            } finally {
+                endNanos = System.nanoTime();
+                done = true;
+                if (onFinish != null) {
+                    onFinish.run();
+                }
+            }
+        });
+    }
+
+    /** Stops the scan; batches already delivered are kept */
+    public void cancel() {
+        cancelled.set(true);
+    }
+
+    public boolean isCancelled() {
+        return cancelled.get();
+    }
+
+    public boolean isDone() {
+        return done;
+    }
+
+    /** Number of audio files found so far */
+    public long filesFound() {
+        return found.get();
+    }
+
+    /** Number of directories listed so far */
+    public long dirsScanned() {
+        return dirs.get();
+    }
+
+    /** Elapsed scan time in milliseconds (up to now while still running) */
+    public long elapsedMillis() {
+        long end = done ? endNanos : System.nanoTime();
+        return (end - startNanos) / 1_000_000L;
+    }
+
+    /** Throughput of the scan in files per second */
+    public double filesPerSecond() {
+        long ms = Math.max(1, elapsedMillis());
+        return found.get() * 1000.0 / ms;
+    }
+
+    /** Returns true for the file types the player can queue */
+    static boolean isTrack(String name) {
+        return Decoders.canDecode(name);
+    }
+
+    private void offer(List<String> files) {
+        List<String> full = null;
+        synchronized (this) {
+            batch.addAll(files);
+            if (batch.size() >= BATCH_SIZE) {
+                full = batch;
+                batch = new ArrayList<>(BATCH_SIZE);
+            }
+        }
+        if (full != null && !cancelled.get()) {
+            sink.accept(full);
+        }
+    }
+
+    private void flush() {
+        List<String> rest;
+        synchronized (this) {
+            rest = batch;
+            batch = new ArrayList<>(BATCH_SIZE);
+        }
+        if (!rest.isEmpty() && !cancelled.get()) {
+            sink.accept(rest);
+        }
+    }
+
+    /** Lists one directory and forks a task for each sub directory */
+    private class DirTask extends RecursiveAction {
+
+        private final Path dir;
+
+        DirTask(Path dir) {
+            this.dir = dir;
+        }
+
+        @Override
+        protected void compute() {
+            if (cancelled.get()) {
+                return;
+            }
+            // Watch before listing, so a file created while the folder is
+            // read is either listed or reported by the watcher
+            if (onDirectory != null) {
+                onDirectory.accept(dir);
+            }
+            List<DirTask> subTasks = new ArrayList<>();
+            List<String> files = new ArrayList<>();
+
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+                for (Path entry : entries) {
+                    if (cancelled.get()) {
+                        return;
+                    }
+                    if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+                        subTasks.add(new DirTask(entry));
+                    } else if (isTrack(entry.getFileName().toString())) {
+                        files.add(entry.toAbsolutePath().toString());
+                    }
+                }
+            } catch (IOException | SecurityException ex) {
+                System.out.println("⚠️ Cannot read folder: " + dir);
+            }
+
+            dirs.incrementAndGet();
+            if (!files.isEmpty()) {
+                found.addAndGet(files.size());
+                offer(files);
+            }
+            invokeAll(subTasks);
+        }
+    }
+}
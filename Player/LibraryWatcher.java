@@ -0,0 +1,196 @@
+/**
+ * LibraryWatcher.java
+ * -------------------------------------
+ * Keeps the in-memory library in step with the folders it was loaded from.
+ *
+ * Every scanned directory is registered with a {@link WatchService}. File
+ * creations and deletions (a rename shows up as one of each) are collected
+ * on a background thread and handed to the listener as one change set, so
+ * only the affected entries are touched and a full rescan is never needed.
+ */
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+public class LibraryWatcher implements Runnable {
+
+    /** Receives the changes found by one poll of the watch service */
+    public interface Listener {
+        /**
+         * @param added absolute paths of new tracks
+         * @param removed absolute paths of deleted tracks
+         * @param removedDirs absolute paths of deleted folders (everything below is gone)
+         * @param rescanned folders whose events were lost; the listed tracks are the full
+         *        content of each, subfolders included
+         */
+        void filesChanged(List<String> added, List<String> removed,
+                List<String> removedDirs, List<String> rescanned);
+    }
+
+    private final WatchService service;
+    private final Listener listener;
+    private final Map<WatchKey, Path> keys = new ConcurrentHashMap<>();
+    private final Set<Path> dirs = ConcurrentHashMap.newKeySet();
+    private final Set<Path> roots = ConcurrentHashMap.newKeySet();
+    private Thread thread;
+
+    public LibraryWatcher(Listener listener) throws IOException {
+        this.service = FileSystems.getDefault().newWatchService();
+        this.listener = listener;
+    }
+
+    /** Remembers a library root so it is not scanned a second time */
+    public void addRoot(Path root) {
+        roots.add(root.toAbsolutePath().normalize());
+    }
+
+    /** Returns true if the folder lies inside a root that is already watched */
+    public boolean isWatching(Path dir) {
+        Path p = dir.toAbsolutePath().normalize();
+        for (Path root : roots) {
+            if (p.startsWith(root)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Watches a single directory; safe to call from scanner worker threads.
+     * @param dir directory to watch
+     */
+    public void register(Path dir) {
+        try {
+            WatchKey key = dir.register(service, ENTRY_CREATE, ENTRY_DELETE);
+            keys.put(key, dir.toAbsolutePath());
+            dirs.add(dir.toAbsolutePath());
+        } catch (IOException | SecurityException ex) {
+            System.out.println("⚠️ Cannot watch folder: " + dir);
+        }
+    }
+
+    /** Starts the background watch thread */
+    public void start() {
+        thread = new Thread(this, "library-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** Stops watching all folders */
+    public void close() {
+        try {
+            service.close();
+        } catch (IOException ex) {
+            // nothing left to release
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                List<String> added = new ArrayList<>();
+                List<String> removed = new ArrayList<>();
+                List<String> removedDirs = new ArrayList<>();
+                List<String> rescanned = new ArrayList<>();
+
+                // Block for the first key, then drain whatever else is pending
+                WatchKey key = service.take();
+                while (key != null) {
+                    process(key, added, removed, removedDirs, rescanned);
+                    key = service.poll();
+                }
+
+                if (!added.isEmpty() || !removed.isEmpty()
+                        || !removedDirs.isEmpty() || !rescanned.isEmpty()) {
+                    listener.filesChanged(added, removed, removedDirs, rescanned);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException ex) {
+            // watcher closed
+        }
+    }
+
+    private void process(WatchKey key, List<String> added, List<String> removed,
+            List<String> removedDirs, List<String> rescanned) {
+        Path dir = keys.get(key);
+        if (dir == null) {
+            key.cancel();
+            return;
+        }
+
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                // Events were dropped, maybe for folders made or deleted in
+                // here too; list the whole tree again and watch what is there
+                if (!rescanned.contains(dir.toString())) {
+                    rescanned.add(dir.toString());
+                    dirs.removeIf(d -> d.startsWith(dir) && !d.equals(dir));
+                    registerTree(dir, added);
+                }
+                continue;
+            }
+
+            Path child = dir.resolve((Path) event.context());
+            if (event.kind() == ENTRY_CREATE) {
+                if (Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                    registerTree(child, added);
+                } else if (LibraryScanner.isTrack(child.getFileName().toString())) {
+                    added.add(child.toString());
+                }
+            } else if (event.kind() == ENTRY_DELETE) {
+                if (dirs.contains(child)) {
+                    dirs.removeIf(d -> d.startsWith(child));
+                    removedDirs.add(child.toString());
+                } else if (LibraryScanner.isTrack(child.getFileName().toString())) {
+                    removed.add(child.toString());
+                }
+            }
+        }
+
+        if (!key.reset()) {
+            // The folder itself is gone; its parent reports the delete
+            keys.remove(key);
+        }
+    }
+
+    /** Registers a folder and everything below it, and collects their tracks */
+    private void registerTree(Path top, List<String> added) {
+        Deque<Path> pending = new ArrayDeque<>();
+        pending.push(top);
+        while (!pending.isEmpty()) {
+            Path dir = pending.pop();
+            register(dir);
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+                for (Path entry : entries) {
+                    if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+                        pending.push(entry);
+                    } else if (LibraryScanner.isTrack(entry.getFileName().toString())) {
+                        added.add(entry.toAbsolutePath().toString());
+                    }
+                }
+            } catch (IOException | SecurityException ex) {
+                System.out.println("⚠️ Cannot read folder: " + dir);
+            }
+        }
+    }
+}
@@ -1,7 +1,6 @@
 
 
 /* imports */
-import javax.swing.DefaultListModel;
 import javax.swing.*;
 import java.*;
 
@@ -18,7 +17,14 @@ import java.*;
 public class ListFrame extends javax.swing.JFrame {
 
     int index=-1;
-   static DefaultListModel model = new DefaultListModel();
+   // Rows read straight from the playlist
+   static final PlaylistListModel model = new PlaylistListModel();
+   // Widest name the list lays out for; longer ones are cut off
+   private static final String PROTOTYPE = "00 - A fairly long track title by an artist.mp3";
+   // Rows matching the filter box, shown instead of model while it has text
+   static final FilteredListModel filtered = new FilteredListModel();
+   static String filterText = "";
+   private static boolean refilterQueued;
     
     /**
      * Creates new form ListFrame
@@ -31,24 +37,104 @@ public class ListFrame extends javax.swing.JFrame {
             while(false)
                 setB();
         setB();
-        jList1.setModel(model);
+        // Fixed cell size: the list never measures rows that are not shown
+        jList1.setCellRenderer(new TrackCellRenderer());
+        jList1.setPrototypeCellValue(PROTOTYPE);
+        jList1.setModel(filterText.isEmpty() ? model : filtered);
+        findT.setText(filterText);
+        // Every change of the text filters, typed, pasted or set
+        findT.getDocument().addDocumentListener(new javax.swing.event.DocumentListener() {
+            @Override
+            public void insertUpdate(javax.swing.event.DocumentEvent e) {
+                filter(findT.getText());
+            }
+
+            @Override
+            public void removeUpdate(javax.swing.event.DocumentEvent e) {
+                filter(findT.getText());
+            }
+
+            @Override
+            public void changedUpdate(javax.swing.event.DocumentEvent e) {
+                // attribute changes only
+            }
+        });
     }
     public void dis()
     {
     this.dispose();
     }
     
-    public void clearList()
+    /** Shows the whole playlist again after it was replaced */
+    public void refreshList()
     {
-        model.removeAllElements();
+        model.reload();
+    }
+
+    /** Passes playlist edits on to the shared model, one event per edit */
+    static final PlaylistListener modelSync = new PlaylistListener() {
+        @Override
+        public void trackInserted(int index, String path) {
+            model.inserted(index);
+            refilterLater();
+        }
+
+        @Override
+        public void tracksAppended(int from, java.util.List<String> paths) {
+            model.appended(from, paths.size());
+            refilterLater();
+        }
+
+        @Override
+        public void trackRemoved(int index) {
+            model.removed(index);
+            refilterLater();
+        }
+
+        @Override
+        public void trackMoved(int from, int to) {
+            model.changed(from, to);
+            refilterLater();
+        }
+
+        @Override
+        public void playlistReordered() {
+            model.changed(0, Player.trackCount() - 1);
+            refilterLater();
+        }
+    };
+
+    /** Shows only the tracks matching the text, or the whole playlist if it is blank */
+    void filter(String text) {
+        filterText = text.trim();
+        if (filterText.isEmpty()) {
+            jList1.setModel(model);
+            return;
+        }
+        long start = System.nanoTime();
+        filtered.setIds(Player.search(filterText));
+        if (jList1.getModel() != filtered) {
+            jList1.setModel(filtered);
+        }
+        long ms = (System.nanoTime() - start) / 1_000_000L;
+        if (ms > 50) {
+            System.out.println("⚠️ Filter \"" + filterText + "\" took " + ms + " ms");
+        }
+    }
+
+    /** Runs the filter again once a burst of playlist edits is over */
+    private static void refilterLater() {
+        if (filterText.isEmpty() || refilterQueued) {
+            return;
+        }
+        refilterQueued = true;
+        SwingUtilities.invokeLater(() -> {
+            refilterQueued = false;
+            if (!filterText.isEmpty()) {
+                filtered.setIds(Player.search(filterText));
+            }
+        });
     }
-      public void setList(String name)
-      {
-          
-      
-      
-          model.addElement(name);
-      }
   
 
     public void setB()
@@ -91,6 +177,7 @@ public class ListFrame extends javax.swing.JFrame {
         jPanel1 = new javax.swing.JPanel();
         sortC = new javax.swing.JComboBox<>();
         jButton1 = new javax.swing.JButton();
+        findT = new javax.swing.JTextField();
         jScrollPane1 = new javax.swing.JScrollPane();
         jList1 = new javax.swing.JList<>();
         setAtB = new javax.swing.JButton();
@@ -166,7 +253,7 @@ public class ListFrame extends javax.swing.JFrame {
         jPanel1.setBackground(new java.awt.Color(0, 0, 0));
         jPanel1.setLayout(new org.netbeans.lib.awtextra.AbsoluteLayout());
 
-        sortC.setModel(new javax.swing.DefaultComboBoxModel<>(new String[] { "Name", "Fav"}));
+        sortC.setModel(new javax.swing.DefaultComboBoxModel<>(new String[] { "Name", "Fav", "Title", "Artist", "Album", "Duration"}));
         sortC.addActionListener(new java.awt.event.ActionListener() {
             public void actionPerformed(java.awt.event.ActionEvent evt) {
                 sortCActionPerformed(evt);
@@ -182,6 +269,9 @@ public class ListFrame extends javax.swing.JFrame {
         });
         jPanel1.add(jButton1, new org.netbeans.lib.awtextra.AbsoluteConstraints(72, 0, -1, -1));
 
+        findT.setToolTipText("Filter by name, title, artist or album");
+        jPanel1.add(findT, new org.netbeans.lib.awtextra.AbsoluteConstraints(160, 0, 217, -1));
+
         jList1.setBackground(new java.awt.Color(0, 0, 0));
         jList1.setFont(new java.awt.Font("Adobe Hebrew", 0, 12)); // NOI18N
         jList1.setForeground(new java.awt.Color(255, 255, 255));
@@ -253,17 +343,19 @@ public class ListFrame extends javax.swing.JFrame {
     }//GEN-LAST:event_sortCActionPerformed
 
     private void jButton1ActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jButton1ActionPerformed
-          
-        
-        
-// method sort for soting to be made in other class 
-// sortby(sortC.getSelectedItem().toString());
+        Player p=new Player();
+        // sorting runs in the background and reorders the list when done
+        p.sortBy(sortC.getSelectedItem().toString());
     }//GEN-LAST:event_jButton1ActionPerformed
 
     private void jList1MouseClicked(java.awt.event.MouseEvent evt) {//GEN-FIRST:event_jList1MouseClicked
       
          if (evt.getClickCount() == 2) {
              index = jList1.locationToIndex(evt.getPoint());
+             if (index >= 0 && jList1.getModel() == filtered) {
+                 // rows of the filter map back to playlist positions
+                 index = Player.indexOf(filtered.idAt(index));
+             }
              setAtB.setVisible(true);
            
             delB.setVisible(true);
@@ -299,11 +391,16 @@ public class ListFrame extends javax.swing.JFrame {
 
     private void delBActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_delBActionPerformed
        Player p=new Player();
-        p.removeList(index);
-        p.reload();
+        if(index>=0)
+        {
+            p.removeAt(index);
+            index=-1;
+            setB();
+        }
 
         // TODO add your handling code here:
     }//GEN-LAST:event_delBActionPerformed
+
     
    
   
@@ -357,6 +454,7 @@ public class ListFrame extends javax.swing.JFrame {
 
     // Variables declaration - do not modify//GEN-BEGIN:variables
     private javax.swing.JButton delB;
+    private javax.swing.JTextField findT;
     private javax.swing.JButton jButton1;
     private javax.swing.JDialog jDialog1;
     private javax.swing.JDialog jDialog2;
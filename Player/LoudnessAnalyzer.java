@@ -0,0 +1,118 @@
+/**
+ * LoudnessAnalyzer.java
+ * -------------------------------------
+ * Measures the loudness of library tracks in the background, one track
+ * per core at a time. The threads run at the lowest priority, below the
+ * decoder and far below the audio thread, so a full library analysis
+ * only uses time that playback leaves over.
+ *
+ * Paths wait in a bounded queue, filled by a background thread that waits
+ * for room, so a big library never has all its paths on the heap at once.
+ * Results go to the sink as they come in; the library keeps them in its
+ * catalog. Nothing else is remembered, so an analysis that is cut short
+ * simply carries on with the tracks that have no result yet next time.
+ */
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+public class LoudnessAnalyzer {
+
+    private final BlockingQueue<String> pending;
+    private final BiConsumer<String, LoudnessMeter> sink;
+    private final AtomicLong analyzed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicInteger busy = new AtomicInteger();
+    private Runnable onIdle;
+
+    /**
+     * @param threads number of analysis threads
+     * @param maxQueued most files waiting for a thread
+     * @param sink receives each path and the meter that measured it, on an
+     *        analysis thread; the meter is only valid during the call, and
+     *        is null if the track could not be decoded
+     */
+    public LoudnessAnalyzer(int threads, int maxQueued, BiConsumer<String, LoudnessMeter> sink) {
+        this.pending = new ArrayBlockingQueue<>(maxQueued);
+        this.sink = sink;
+        for (int i = 1; i <= threads; i++) {
+            Thread t = new Thread(this::work, "loudness-" + i);
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            t.start();
+        }
+    }
+
+    /** Sets a callback run whenever the queue has been fully drained */
+    public void setOnIdle(Runnable onIdle) {
+        this.onIdle = onIdle;
+    }
+
+    /** Queues files for analysis, waiting while the queue is full; not for the event thread */
+    public void submitAll(List<String> paths) {
+        for (String path : paths) {
+            busy.incrementAndGet();
+            try {
+                pending.put(path);
+            } catch (InterruptedException ex) {
+                busy.decrementAndGet();
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    public long analyzedCount() {
+        return analyzed.get();
+    }
+
+    public long failedCount() {
+        return failed.get();
+    }
+
+    /** Number of files queued or being analyzed */
+    public int backlog() {
+        return busy.get();
+    }
+
+    private void work() {
+        LoudnessMeter meter = new LoudnessMeter();
+        byte[] buf = new byte[PcmPool.CHUNK];
+        try {
+            while (true) {
+                String path = pending.take();
+                try {
+                    measure(path, meter, buf);
+                    analyzed.incrementAndGet();
+                    sink.accept(path, meter);
+                } catch (IOException | RuntimeException ex) {
+                    failed.incrementAndGet();
+                    sink.accept(path, null);
+                } finally {
+                    if (busy.decrementAndGet() == 0 && onIdle != null) {
+                        onIdle.run();
+                    }
+                }
+            }
+        } catch (InterruptedException ex) {
+            // analysis stopped
+        }
+    }
+
+    private static void measure(String path, LoudnessMeter meter, byte[] buf) throws IOException {
+        try (Decoder d = Decoders.open(path)) {
+            meter.reset(d.format().getSampleRate(), d.format().getChannels());
+            // Padding is mostly silence and falls under the gate anyway
+            int n;
+            while ((n = d.read(buf, 0, buf.length - buf.length % d.format().getFrameSize())) >= 0) {
+                meter.feed(buf, 0, n);
+            }
+        }
+        meter.finish();
+    }
+}
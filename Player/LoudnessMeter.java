@@ -0,0 +1,190 @@
+/**
+ * LoudnessMeter.java
+ * -------------------------------------
+ * Measures the integrated loudness of a track the way EBU R128 (ITU-R
+ * BS.1770) does, and its sample peak. The audio is K-weighted by two
+ * biquad filters, cut into 400 ms blocks that overlap by 300 ms, and the
+ * block energies are averaged with the absolute gate at -70 LUFS and the
+ * relative gate 10 LU below the absolutely gated level.
+ *
+ * One meter is reused track after track; feeding it allocates nothing once
+ * its block list has grown to the length of the longest track so far.
+ */
+
+import java.util.Arrays;
+
+public class LoudnessMeter {
+
+    // Loudness of a block with energy z is -0.691 + 10 log10(z)
+    private static final double OFFSET = -0.691;
+    private static final double ABSOLUTE_GATE = -70;
+    private static final double RELATIVE_GATE = -10;
+    // Blocks are four steps of 100 ms
+    private static final int STEPS_PER_BLOCK = 4;
+
+    private int channels;
+    private int stepFrames;
+    private final double[] weights = new double[8];
+    // K-weighting coefficients: high shelf, then high pass
+    private double b0, b1, b2, a1, a2;
+    private double c0, c1, c2, d1, d2;
+    // Filter state per channel: two samples of history for each stage
+    private final double[] state = new double[8 * 8];
+
+    // Weighted energy of the last four steps, and of the step being filled
+    private final double[] steps = new double[STEPS_PER_BLOCK];
+    private int stepCount;
+    private double stepSum;
+    private int stepFill;
+
+    private double[] blocks = new double[4096];
+    private int blockCount;
+    private int peak;
+
+    // Results of the last finish()
+    private double integrated;
+    private int gatedBlocks;
+
+    /** Starts measuring a new track */
+    public void reset(float sampleRate, int channels) {
+        this.channels = Math.min(channels, 8);
+        stepFrames = Math.max(1, Math.round(sampleRate / 10));
+        Arrays.fill(weights, 1);
+        if (channels == 6) {
+            // 5.1: the LFE does not count, the surrounds count a little more
+            weights[3] = 0;
+            weights[4] = 1.41;
+            weights[5] = 1.41;
+        }
+
+        double k = Math.tan(Math.PI * 1681.974450955533 / sampleRate);
+        double q = 0.7071752369554196;
+        double vh = Math.pow(10, 3.999843853973347 / 20);
+        double vb = Math.pow(vh, 0.4996667741545416);
+        double a0 = 1 + k / q + k * k;
+        b0 = (vh + vb * k / q + k * k) / a0;
+        b1 = 2 * (k * k - vh) / a0;
+        b2 = (vh - vb * k / q + k * k) / a0;
+        a1 = 2 * (k * k - 1) / a0;
+        a2 = (1 - k / q + k * k) / a0;
+
+        k = Math.tan(Math.PI * 38.13547087602444 / sampleRate);
+        q = 0.5003270373238773;
+        a0 = 1 + k / q + k * k;
+        c0 = 1;
+        c1 = -2;
+        c2 = 1;
+        d1 = 2 * (k * k - 1) / a0;
+        d2 = (1 - k / q + k * k) / a0;
+
+        Arrays.fill(state, 0);
+        Arrays.fill(steps, 0);
+        stepCount = 0;
+        stepSum = 0;
+        stepFill = 0;
+        blockCount = 0;
+        peak = 0;
+    }
+
+    /**
+     * Feeds signed 16-bit little endian PCM.
+     * @param len bytes, whole frames
+     */
+    public void feed(byte[] buf, int off, int len) {
+        int frameSize = channels * 2;
+        int end = off + len - len % frameSize;
+        for (int i = off; i < end; i += frameSize) {
+            double sum = 0;
+            for (int c = 0; c < channels; c++) {
+                int s = (short) ((buf[i + 2 * c] & 0xFF) | (buf[i + 2 * c + 1] << 8));
+                int abs = s < 0 ? -s : s;
+                if (abs > peak) {
+                    peak = abs;
+                }
+                double x = s / 32768.0;
+                int h = c * 8;
+                // Direct form II transposed, one stage after the other
+                double y = b0 * x + state[h];
+                state[h] = b1 * x - a1 * y + state[h + 1];
+                state[h + 1] = b2 * x - a2 * y;
+                double z = c0 * y + state[h + 2];
+                state[h + 2] = c1 * y - d1 * z + state[h + 3];
+                state[h + 3] = c2 * y - d2 * z;
+                sum += weights[c] * z * z;
+            }
+            stepSum += sum;
+            if (++stepFill == stepFrames) {
+                endStep();
+            }
+        }
+    }
+
+    private void endStep() {
+        steps[stepCount % STEPS_PER_BLOCK] = stepSum;
+        stepCount++;
+        stepSum = 0;
+        stepFill = 0;
+        if (stepCount >= STEPS_PER_BLOCK) {
+            double z = 0;
+            for (double s : steps) {
+                z += s;
+            }
+            if (blockCount == blocks.length) {
+                blocks = Arrays.copyOf(blocks, blockCount * 2);
+            }
+            blocks[blockCount++] = z / (STEPS_PER_BLOCK * stepFrames);
+        }
+    }
+
+    /** Works out the integrated loudness from the blocks fed so far */
+    public void finish() {
+        double absolute = energyOf(ABSOLUTE_GATE);
+        double sum = 0;
+        int n = 0;
+        for (int i = 0; i < blockCount; i++) {
+            if (blocks[i] > absolute) {
+                sum += blocks[i];
+                n++;
+            }
+        }
+        gatedBlocks = 0;
+        integrated = Double.NEGATIVE_INFINITY;
+        if (n == 0) {
+            return;
+        }
+        double relative = Math.max(absolute, energyOf(loudnessOf(sum / n) + RELATIVE_GATE));
+        sum = 0;
+        for (int i = 0; i < blockCount; i++) {
+            if (blocks[i] > relative) {
+                sum += blocks[i];
+                gatedBlocks++;
+            }
+        }
+        if (gatedBlocks > 0) {
+            integrated = loudnessOf(sum / gatedBlocks);
+        }
+    }
+
+    /** Integrated loudness in LUFS; minus infinity for silence */
+    public double integrated() {
+        return integrated;
+    }
+
+    /** Blocks that passed both gates; weighs the track in an album's loudness */
+    public int gatedBlocks() {
+        return gatedBlocks;
+    }
+
+    /** Largest sample, 1.0 being full scale */
+    public double peak() {
+        return peak / 32768.0;
+    }
+
+    static double loudnessOf(double energy) {
+        return OFFSET + 10 * Math.log10(energy);
+    }
+
+    static double energyOf(double loudness) {
+        return Math.pow(10, (loudness - OFFSET) / 10);
+    }
+}
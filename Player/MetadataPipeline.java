@@ -0,0 +1,151 @@
+/**
+ * MetadataPipeline.java
+ * -------------------------------------
+ * Tags library tracks in the background with the reader of their format
+ * (see {@link Decoders}).
+ *
+ * Paths wait in a bounded queue, and a feeder thread hands them to a fixed
+ * worker pool. A semaphore caps the number of files being read at once, so
+ * a 100k-track import keeps every worker (and the disk) busy while only a
+ * bounded number of paths and results are ever on the heap. The paths are
+ * Strings built from the {@link PathStore} for the queue, so the queue's
+ * bound is also what they cost.
+ *
+ * Background threads queue with {@link #submitAll}, which waits for room.
+ * The event thread must not wait and uses {@link #offerAll}, which queues
+ * what fits; the caller picks up the rest later, once the pipeline is idle.
+ */
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+public class MetadataPipeline {
+
+    private final ExecutorService workers;
+    private final Semaphore inFlight;
+    private final BlockingQueue<String> pending;
+    private final BiConsumer<String, TrackInfo> sink;
+    private final AtomicLong tagged = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicInteger busy = new AtomicInteger();
+    private Runnable onIdle;
+
+    /**
+     * @param threads number of reader threads
+     * @param maxInFlight most files being read or waiting to be delivered at once
+     * @param maxQueued most files waiting for a reader
+     * @param sink receives each path and its tagged entry on a worker thread
+     */
+    public MetadataPipeline(int threads, int maxInFlight, int maxQueued, BiConsumer<String, TrackInfo> sink) {
+        AtomicInteger n = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "metadata-" + n.incrementAndGet());
+            t.setDaemon(true);
+            t.setPriority(Thread.NORM_PRIORITY - 1);
+            return t;
+        });
+        this.inFlight = new Semaphore(maxInFlight);
+        this.pending = new ArrayBlockingQueue<>(maxQueued);
+        this.sink = sink;
+
+        Thread feeder = new Thread(this::feed, "metadata-feeder");
+        feeder.setDaemon(true);
+        feeder.start();
+    }
+
+    /** Sets a callback run whenever the queue has been fully drained */
+    public void setOnIdle(Runnable onIdle) {
+        this.onIdle = onIdle;
+    }
+
+    /** Queues files for tagging, waiting while the queue is full; not for the event thread */
+    public void submitAll(List<String> paths) {
+        for (String path : paths) {
+            busy.incrementAndGet();
+            try {
+                pending.put(path);
+            } catch (InterruptedException ex) {
+                done();
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Queues as many files as there is room for, in order, and returns at
+     * once.
+     * @return number of files queued, from the start of the list
+     */
+    public int offerAll(List<String> paths) {
+        int queued = 0;
+        for (String path : paths) {
+            busy.incrementAndGet();
+            if (!pending.offer(path)) {
+                done();
+                break;
+            }
+            queued++;
+        }
+        return queued;
+    }
+
+    public long taggedCount() {
+        return tagged.get();
+    }
+
+    public long failedCount() {
+        return failed.get();
+    }
+
+    /** Number of files queued or being read */
+    public int backlog() {
+        return busy.get();
+    }
+
+    /** Drops the queued files and stops the workers */
+    public void shutdown() {
+        pending.clear();
+        workers.shutdownNow();
+    }
+
+    private void feed() {
+        try {
+            while (true) {
+                String path = pending.take();
+                // Blocks while maxInFlight files are being read
+                inFlight.acquire();
+                workers.execute(() -> tag(path));
+            }
+        } catch (InterruptedException | RejectedExecutionException ex) {
+            // pipeline shut down
+        }
+    }
+
+    private void tag(String path) {
+        try {
+            sink.accept(path, Decoders.readInfo(path));
+            tagged.incrementAndGet();
+        } catch (Exception ex) {
+            failed.incrementAndGet();
+        } finally {
+            inFlight.release();
+            done();
+        }
+    }
+
+    /** Counts one file as finished with, and reports when none are left */
+    private void done() {
+        if (busy.decrementAndGet() == 0 && onIdle != null) {
+            onIdle.run();
+        }
+    }
+}
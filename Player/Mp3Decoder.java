@@ -0,0 +1,163 @@
+/**
+ * Mp3Decoder.java
+ * -------------------------------------
+ * MP3 decoder for the playback engine. The frames are decoded by the MP3
+ * sound provider on the classpath (mp3spi) and converted to 16-bit PCM,
+ * read straight into the engine's pooled chunks. The encoder delay and
+ * padding from the LAME tag, the silent Xing/Info frame and the synthesis
+ * filter's own delay are reported as padding, so tracks join without a gap.
+ * Seeking jumps to the right frame through the file's {@link Mp3FrameIndex}.
+ */
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+public class Mp3Decoder implements Decoder {
+
+    // Delay of the MPEG audio synthesis filter bank, in samples (528 + 1)
+    private static final int DECODER_DELAY = 529;
+
+    // Frames decoded ahead of a seek target, to refill the bit reservoir
+    private static final int PREROLL = 2;
+    private static final int SEEK_BUFFER = 64 * 1024;
+
+    private final String path;
+    private AudioInputStream in;
+    private final AudioFormat format;
+    private final long leading;
+    private final long frames;
+    // Bytes to drop before the next read, after a seek
+    private long discard;
+
+    public Mp3Decoder(String path) throws IOException {
+        this.path = path;
+        Mp3HeaderReader.Gapless g = Mp3HeaderReader.readGapless(path);
+        if (g != null) {
+            leading = g.samplesPerFrame + g.delay + DECODER_DELAY;
+            frames = g.samples();
+        } else {
+            leading = 0;
+            frames = -1;
+        }
+        try {
+            in = toPcm(AudioSystem.getAudioInputStream(new File(path)));
+        } catch (UnsupportedAudioFileException ex) {
+            throw new IOException("No MP3 sound provider on the classpath", ex);
+        } catch (IllegalArgumentException ex) {
+            throw new IOException("Cannot convert to PCM: " + ex.getMessage(), ex);
+        }
+        format = in.getFormat();
+    }
+
+    /** Wraps a stream so it reads as signed 16-bit little endian PCM */
+    static AudioInputStream toPcm(AudioInputStream src) {
+        AudioFormat sf = src.getFormat();
+        float rate = sf.getSampleRate();
+        int channels = sf.getChannels();
+        AudioFormat pcm = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, rate, 16,
+                channels, channels * 2, rate, false);
+        if (sf.matches(pcm)) {
+            return src;
+        }
+        return AudioSystem.getAudioInputStream(pcm, src);
+    }
+
+    @Override
+    public AudioFormat format() {
+        return format;
+    }
+
+    @Override
+    public int read(byte[] buf, int off, int len) throws IOException {
+        while (discard > 0) {
+            int whole = len - len % format.getFrameSize();
+            int n = in.read(buf, off, (int) Math.min(whole, discard));
+            if (n < 0) {
+                return -1;
+            }
+            discard -= n;
+        }
+        return in.read(buf, off, len);
+    }
+
+    @Override
+    public boolean seek(long frame) throws IOException {
+        Mp3FrameIndex idx = Mp3FrameIndex.get(path);
+        if (idx == null) {
+            return false;
+        }
+        int start = Math.max(0, idx.frameOf(frame) - PREROLL);
+        FileChannel ch = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+        AudioInputStream next;
+        try {
+            ch.position(idx.offset(start));
+            InputStream raw = new BufferedInputStream(Channels.newInputStream(ch), SEEK_BUFFER);
+            next = toPcm(AudioSystem.getAudioInputStream(raw));
+        } catch (UnsupportedAudioFileException | IllegalArgumentException ex) {
+            ch.close();
+            return false;
+        } catch (IOException | RuntimeException ex) {
+            // Nothing else holds the file open yet
+            ch.close();
+            throw ex;
+        }
+        try {
+            in.close();
+        } finally {
+            in = next;
+        }
+        discard = Math.max(0, frame - (long) start * idx.samplesPerFrame) * format.getFrameSize();
+        return true;
+    }
+
+    @Override
+    public void prepareSeeking() {
+        // Have the index ready by the time someone drags the slider
+        Mp3FrameIndex.prefetch(path);
+    }
+
+    @Override
+    public long leadingFrames() {
+        return leading;
+    }
+
+    @Override
+    public long audioFrames() {
+        return frames;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /** Provider for .mp3 files; tags come from {@link Mp3HeaderReader} */
+    static class Provider implements DecoderProvider {
+
+        @Override
+        public boolean canDecode(String name) {
+            int n = name.length();
+            return n > 4 && name.regionMatches(true, n - 4, ".mp3", 0, 4);
+        }
+
+        @Override
+        public Decoder open(String path) throws IOException {
+            return new Mp3Decoder(path);
+        }
+
+        @Override
+        public TrackInfo readInfo(String path) throws IOException {
+            return Mp3HeaderReader.read(path);
+        }
+    }
+}
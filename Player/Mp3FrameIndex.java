@@ -0,0 +1,248 @@
+/**
+ * Mp3FrameIndex.java
+ * -------------------------------------
+ * Byte offset of every frame of an MP3 file, for seeking. Every frame of a
+ * file holds the same number of samples, so the frame for a time is found
+ * by a division and its offset by an array lookup, however variable the
+ * bitrate; the decoder then starts a couple of frames earlier instead of
+ * decoding from the top of the file.
+ *
+ * An index is built by hopping from frame header to frame header, which
+ * reads a few bytes per frame. Built indexes are kept for the last few
+ * files in memory and saved under ~/.project-player/frames, checked
+ * against the file's size and modification time when loaded again.
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class Mp3FrameIndex {
+
+    /** Where built indexes are saved */
+    static final Path DIR = Paths.get(System.getProperty("user.home"), ".project-player", "frames");
+
+    private static final int MAGIC = 0x4D504649; // "MPFI"
+    private static final int VERSION = 1;
+    // Indexes kept in memory
+    private static final int CACHED = 4;
+    // Bytes read at a time while hopping over frames
+    private static final int WINDOW = 64 * 1024;
+
+    private static final Map<String, Mp3FrameIndex> recent = new LinkedHashMap<String, Mp3FrameIndex>(8, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Mp3FrameIndex> eldest) {
+            return size() > CACHED;
+        }
+    };
+
+    private static ExecutorService builder;
+
+    final long size;
+    final long mtime;
+    final int samplesPerFrame;
+    final int sampleRate;
+    private final int[] offsets;
+
+    private Mp3FrameIndex(long size, long mtime, int samplesPerFrame, int sampleRate, int[] offsets) {
+        this.size = size;
+        this.mtime = mtime;
+        this.samplesPerFrame = samplesPerFrame;
+        this.sampleRate = sampleRate;
+        this.offsets = offsets;
+    }
+
+    /** Number of frames in the file */
+    public int frameCount() {
+        return offsets.length;
+    }
+
+    /** Byte offset of a frame's header */
+    public long offset(int frame) {
+        return offsets[frame];
+    }
+
+    /** Frame that decodes to the given sample, counted from the first frame; clamped */
+    public int frameOf(long sample) {
+        return (int) Math.max(0, Math.min(offsets.length - 1, sample / samplesPerFrame));
+    }
+
+    /**
+     * Returns the index of a file from memory, from disk, or by building
+     * it, in that order. Safe to call from any thread.
+     * @return the index, or null if the file has no frames or is over 2 GB
+     */
+    public static Mp3FrameIndex get(String path) throws IOException {
+        Path file = Paths.get(path);
+        long size = Files.size(file);
+        long mtime = Files.getLastModifiedTime(file).toMillis();
+        synchronized (recent) {
+            Mp3FrameIndex idx = recent.get(path);
+            if (idx != null && idx.size == size && idx.mtime == mtime) {
+                return idx;
+            }
+        }
+
+        Path saved = DIR.resolve(Long.toHexString(PlayStats.hash(path)) + ".idx");
+        Mp3FrameIndex idx = load(saved, path, size, mtime);
+        if (idx == null) {
+            idx = build(file, size, mtime);
+            if (idx == null) {
+                return null;
+            }
+            save(saved, path, idx);
+        }
+        synchronized (recent) {
+            recent.put(path, idx);
+        }
+        return idx;
+    }
+
+    /** Builds or loads a file's index in the background, so a later seek finds it ready */
+    public static void prefetch(String path) {
+        synchronized (Mp3FrameIndex.class) {
+            if (builder == null) {
+                builder = Executors.newSingleThreadExecutor(r -> {
+                    Thread t = new Thread(r, "frame-index");
+                    t.setDaemon(true);
+                    t.setPriority(Thread.MIN_PRIORITY);
+                    return t;
+                });
+            }
+        }
+        builder.execute(() -> {
+            try {
+                get(path);
+            } catch (IOException ex) {
+                // seeking will try again, and fall back to decoding
+            }
+        });
+    }
+
+    /** Hops over the frames of a file, resyncing past junk between them */
+    static Mp3FrameIndex build(Path file, long size, long mtime) throws IOException {
+        if (size > Integer.MAX_VALUE) {
+            return null;
+        }
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long end = size;
+            ByteBuffer v1 = Mp3HeaderReader.readAt(ch, Math.max(0, size - 128), 128);
+            if (size >= 128 && v1.get(0) == 'T' && v1.get(1) == 'A' && v1.get(2) == 'G') {
+                end -= 128;
+            }
+
+            int[] offsets = new int[(int) Math.min(1 << 16, size / 100 + 16)];
+            int count = 0;
+            int spf = 0;
+            int rate = 0;
+            ByteBuffer win = ByteBuffer.allocate(WINDOW);
+            long winStart = -WINDOW;
+            long pos = Mp3HeaderReader.readId3v2(ch, new TrackInfo(0, 0));
+
+            while (pos + 4 <= end) {
+                if (pos < winStart || pos + 8 > winStart + win.limit()) {
+                    win.clear();
+                    while (win.hasRemaining() && ch.read(win, pos + win.position()) >= 0) {
+                        // fill the window
+                    }
+                    win.flip();
+                    winStart = pos;
+                    if (win.remaining() < 4) {
+                        break;
+                    }
+                }
+                int at = (int) (pos - winStart);
+                int header = win.getInt(at);
+                boolean ok = Mp3HeaderReader.isFrameHeader(header)
+                        && (spf == 0 || Mp3HeaderReader.samplesPerFrame(header) == spf
+                            && Mp3HeaderReader.sampleRate(header) == rate);
+                if (ok && count == 0) {
+                    // Check the first frame against the next, like the tag reader does
+                    int len = Mp3HeaderReader.frameLength(header);
+                    ok = at + len + 4 > win.limit() || Mp3HeaderReader.isFrameHeader(win.getInt(at + len));
+                }
+                if (!ok) {
+                    pos++;
+                    continue;
+                }
+                if (count == 0) {
+                    spf = Mp3HeaderReader.samplesPerFrame(header);
+                    rate = Mp3HeaderReader.sampleRate(header);
+                }
+                if (count == offsets.length) {
+                    offsets = Arrays.copyOf(offsets, count * 2);
+                }
+                offsets[count++] = (int) pos;
+                pos += Mp3HeaderReader.frameLength(header);
+            }
+            return count == 0 ? null : new Mp3FrameIndex(size, mtime, spf, rate, Arrays.copyOf(offsets, count));
+        }
+    }
+
+    private static Mp3FrameIndex load(Path saved, String path, long size, long mtime) {
+        if (!Files.isRegularFile(saved)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(saved)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || !in.readUTF().equals(path)
+                    || in.readLong() != size || in.readLong() != mtime) {
+                return null;
+            }
+            int spf = in.readInt();
+            int rate = in.readInt();
+            int[] offsets = new int[in.readInt()];
+            for (int i = 0; i < offsets.length; i++) {
+                offsets[i] = in.readInt();
+            }
+            return new Mp3FrameIndex(size, mtime, spf, rate, offsets);
+        } catch (IOException | RuntimeException ex) {
+            return null;
+        }
+    }
+
+    private static void save(Path saved, String path, Mp3FrameIndex idx) {
+        Path tmp = null;
+        try {
+            Files.createDirectories(saved.getParent());
+            // A name of its own, as two threads can build the same index at once
+            tmp = Files.createTempFile(saved.getParent(), saved.getFileName().toString(), ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(path);
+                out.writeLong(idx.size);
+                out.writeLong(idx.mtime);
+                out.writeInt(idx.samplesPerFrame);
+                out.writeInt(idx.sampleRate);
+                out.writeInt(idx.offsets.length);
+                for (int off : idx.offsets) {
+                    out.writeInt(off);
+                }
+            }
+            Files.move(tmp, saved, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            System.out.println("⚠️ Could not save frame index: " + ex.getMessage());
+            if (tmp != null) {
+                try {
+                    Files.deleteIfExists(tmp);
+                } catch (IOException again) {
+                    // a stray temp file only costs its space
+                }
+            }
+        }
+    }
+}
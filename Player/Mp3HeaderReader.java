@@ -0,0 +1,380 @@
+/**
+ * Mp3HeaderReader.java
+ * -------------------------------------
+ * Reads title, artist, album and duration from an MP3 file by looking only
+ * at its headers: the ID3v2 tag at the front (frame headers are walked and
+ * only the text frames we need are read), the ID3v1 tag in the last 128
+ * bytes, and the first MPEG frame together with its Xing/Info or VBRI
+ * header. Everything goes through positioned {@link FileChannel} reads, so
+ * cover art and audio data are never loaded. The encoder delay and padding
+ * in the LAME tag are read the same way for gapless playback.
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+public class Mp3HeaderReader {
+
+    // How far past the tag we look for the first frame sync
+    private static final int SYNC_WINDOW = 64 * 1024;
+    // Text frames larger than this are not tags we care about
+    private static final int MAX_TEXT_FRAME = 4096;
+
+    private static final int[][] BITRATES = {
+        // MPEG1 layer 1, 2, 3
+        {0, 32, 64, 96, 128, 160, 192, 224, 256, 288, 320, 352, 384, 416, 448},
+        {0, 32, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320, 384},
+        {0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320},
+        // MPEG2/2.5 layer 1, layers 2 and 3
+        {0, 32, 48, 56, 64, 80, 96, 112, 128, 144, 160, 176, 192, 224, 256},
+        {0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160},
+    };
+    private static final int[] SAMPLE_RATES = {44100, 48000, 32000};
+
+    private Mp3HeaderReader() {
+    }
+
+    /**
+     * Reads the tags and duration of one file.
+     * @param path absolute file path
+     * @return a fully tagged library entry
+     */
+    public static TrackInfo read(String path) throws IOException {
+        Path file = Paths.get(path);
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = ch.size();
+            TrackInfo t = new TrackInfo(size, Files.getLastModifiedTime(file).toMillis());
+
+            long audioStart = readId3v2(ch, t);
+            long audioEnd = size;
+            if (size >= 128 + audioStart) {
+                ByteBuffer v1 = readAt(ch, size - 128, 128);
+                if (v1.remaining() == 128 && v1.get(0) == 'T' && v1.get(1) == 'A' && v1.get(2) == 'G') {
+                    audioEnd -= 128;
+                    if (t.title.isEmpty()) {
+                        t.title = latin1(v1, 3, 30);
+                    }
+                    if (t.artist.isEmpty()) {
+                        t.artist = latin1(v1, 33, 30);
+                    }
+                    if (t.album.isEmpty()) {
+                        t.album = latin1(v1, 63, 30);
+                    }
+                }
+            }
+
+            t.durationMs = readDuration(ch, audioStart, audioEnd);
+            t.tagged = true;
+            return t;
+        }
+    }
+
+    /**
+     * Parses the ID3v2 tag, if any.
+     * @return offset of the first byte after the tag
+     */
+    static long readId3v2(FileChannel ch, TrackInfo t) throws IOException {
+        ByteBuffer h = readAt(ch, 0, 10);
+        if (h.remaining() < 10 || h.get(0) != 'I' || h.get(1) != 'D' || h.get(2) != '3') {
+            return 0;
+        }
+        int major = h.get(3);
+        int flags = h.get(5) & 0xFF;
+        long tagEnd = 10 + syncsafe(h, 6);
+        long end = tagEnd + ((flags & 0x10) != 0 ? 10 : 0);
+
+        // Unsynchronised tags would need the whole tag decoded; keep the offset only
+        if ((flags & 0x80) != 0 || major < 2 || major > 4) {
+            return end;
+        }
+
+        long pos = 10;
+        if ((flags & 0x40) != 0 && major >= 3) {
+            ByteBuffer ext = readAt(ch, pos, 4);
+            if (ext.remaining() < 4) {
+                return end;
+            }
+            pos += major == 4 ? syncsafe(ext, 0) : ext.getInt(0) + 4;
+        }
+
+        int idLen = major == 2 ? 3 : 4;
+        int headLen = major == 2 ? 6 : 10;
+        while (pos + headLen <= tagEnd) {
+            ByteBuffer fh = readAt(ch, pos, headLen);
+            if (fh.remaining() < headLen || fh.get(0) == 0) {
+                break; // padding
+            }
+            String id = new String(fh.array(), 0, idLen, StandardCharsets.ISO_8859_1);
+            long frameSize;
+            if (major == 2) {
+                frameSize = ((fh.get(3) & 0xFF) << 16) | ((fh.get(4) & 0xFF) << 8) | (fh.get(5) & 0xFF);
+            } else if (major == 4) {
+                frameSize = syncsafe(fh, 4);
+            } else {
+                frameSize = fh.getInt(4) & 0xFFFFFFFFL;
+            }
+            long body = pos + headLen;
+            if (frameSize <= 0 || body + frameSize > tagEnd) {
+                break;
+            }
+
+            if (frameSize <= MAX_TEXT_FRAME) {
+                switch (id) {
+                    case "TIT2": case "TT2":
+                        t.title = text(readAt(ch, body, (int) frameSize));
+                        break;
+                    case "TPE1": case "TP1":
+                        t.artist = text(readAt(ch, body, (int) frameSize));
+                        break;
+                    case "TALB": case "TAL":
+                        t.album = text(readAt(ch, body, (int) frameSize));
+                        break;
+                    default:
+                        break;
+                }
+            }
+            pos = body + frameSize;
+        }
+        return end;
+    }
+
+    /** Works out the play time from the first frame and its VBR header */
+    static int readDuration(FileChannel ch, long audioStart, long audioEnd) throws IOException {
+        ByteBuffer win = readAt(ch, audioStart, (int) Math.min(SYNC_WINDOW, Math.max(0, audioEnd - audioStart)));
+        int i = firstFrame(win);
+        if (i < 0) {
+            return 0;
+        }
+        int header = win.getInt(i);
+        int rate = sampleRate(header);
+        int spf = samplesPerFrame(header);
+        int frames = vbrFrameCount(win, i, header);
+        if (frames > 0) {
+            return (int) ((long) frames * spf * 1000L / rate);
+        }
+        long bytes = audioEnd - audioStart - i;
+        return (int) (bytes * 8000L / bitrate(header));
+    }
+
+    /** Offset of the first frame header in the window, or -1 */
+    private static int firstFrame(ByteBuffer win) {
+        int limit = win.remaining();
+        for (int i = 0; i + 4 <= limit; i++) {
+            int header = win.getInt(i);
+            if (!isFrameHeader(header)) {
+                continue;
+            }
+            // Require a second frame right behind to avoid false syncs
+            if (i + frameLength(header) + 4 <= limit && !isFrameHeader(win.getInt(i + frameLength(header)))) {
+                continue;
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Reads the encoder delay and padding that LAME (and ffmpeg, which
+     * writes the same tag) store after the Xing/Info header, so a player can
+     * cut the silence the encoder added around the audio.
+     * @return the gapless info, or null if the file has no Xing/Info header
+     */
+    public static Gapless readGapless(String path) throws IOException {
+        try (FileChannel ch = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            long audioStart = readId3v2(ch, new TrackInfo(0, 0));
+            ByteBuffer win = readAt(ch, audioStart, (int) Math.min(SYNC_WINDOW, Math.max(0, ch.size() - audioStart)));
+            int frame = firstFrame(win);
+            if (frame < 0) {
+                return null;
+            }
+            int header = win.getInt(frame);
+            int xing = frame + 4 + sideInfoSize(header);
+            if (xing + 8 > win.limit()) {
+                return null;
+            }
+            int tag = win.getInt(xing);
+            if (tag != 0x58696E67 && tag != 0x496E666F) { // "Xing" / "Info"
+                return null;
+            }
+            int flags = win.getInt(xing + 4);
+            int pos = xing + 8;
+            long frames = -1;
+            if ((flags & 1) != 0 && pos + 4 <= win.limit()) {
+                frames = win.getInt(pos) & 0xFFFFFFFFL;
+                pos += 4;
+            }
+            pos += (flags & 2) != 0 ? 4 : 0;    // byte count
+            pos += (flags & 4) != 0 ? 100 : 0;  // seek table
+            pos += (flags & 8) != 0 ? 4 : 0;    // quality
+
+            int delay = 0;
+            int padding = 0;
+            if (pos + 24 <= win.limit()) {
+                int encoder = win.getInt(pos);
+                if (encoder == 0x4C414D45 || encoder == 0x4C617663 || encoder == 0x4C617666) { // "LAME" / "Lavc" / "Lavf"
+                    int b0 = win.get(pos + 21) & 0xFF;
+                    int b1 = win.get(pos + 22) & 0xFF;
+                    int b2 = win.get(pos + 23) & 0xFF;
+                    delay = (b0 << 4) | (b1 >>> 4);
+                    padding = ((b1 & 0xF) << 8) | b2;
+                }
+            }
+            return new Gapless(samplesPerFrame(header), frames, delay, padding);
+        }
+    }
+
+    /** Where the real audio starts and ends in the decoded samples of a file */
+    public static final class Gapless {
+        /** Samples per frame; the Xing/Info frame itself decodes to this much silence */
+        public final int samplesPerFrame;
+        /** Audio frames after the Xing/Info frame, or -1 if not stored */
+        public final long frames;
+        /** Silent samples the encoder put before the audio */
+        public final int delay;
+        /** Silent samples the encoder put after the audio */
+        public final int padding;
+
+        Gapless(int samplesPerFrame, long frames, int delay, int padding) {
+            this.samplesPerFrame = samplesPerFrame;
+            this.frames = frames;
+            this.delay = delay;
+            this.padding = padding;
+        }
+
+        /** Number of real audio samples per channel, or -1 if unknown */
+        public long samples() {
+            return frames < 0 ? -1 : Math.max(0, frames * samplesPerFrame - delay - padding);
+        }
+    }
+
+    /** Frame count from a Xing/Info or VBRI header in the first frame, or -1 */
+    static int vbrFrameCount(ByteBuffer win, int frame, int header) {
+        int xing = frame + 4 + sideInfoSize(header);
+        if (xing + 12 <= win.limit()) {
+            int tag = win.getInt(xing);
+            if (tag == 0x58696E67 || tag == 0x496E666F) { // "Xing" / "Info"
+                int flags = win.getInt(xing + 4);
+                return (flags & 1) != 0 ? win.getInt(xing + 8) : -1;
+            }
+        }
+        int vbri = frame + 4 + 32;
+        if (vbri + 18 <= win.limit() && win.getInt(vbri) == 0x56425249) { // "VBRI"
+            return win.getInt(vbri + 14);
+        }
+        return -1;
+    }
+
+    /** True if the four bytes look like a valid MPEG audio frame header */
+    static boolean isFrameHeader(int h) {
+        return (h & 0xFFE00000) == 0xFFE00000
+                && ((h >>> 19) & 3) != 1        // reserved version
+                && ((h >>> 17) & 3) != 0        // reserved layer
+                && ((h >>> 12) & 0xF) != 0xF    // bad bitrate
+                && ((h >>> 12) & 0xF) != 0      // free format
+                && ((h >>> 10) & 3) != 3;       // reserved sample rate
+    }
+
+    /** 3 = MPEG1, 2 = MPEG2, 0 = MPEG2.5 */
+    static int version(int h) {
+        return (h >>> 19) & 3;
+    }
+
+    /** 1, 2 or 3 */
+    static int layer(int h) {
+        return 4 - ((h >>> 17) & 3);
+    }
+
+    static boolean isMono(int h) {
+        return ((h >>> 6) & 3) == 3;
+    }
+
+    static int sampleRate(int h) {
+        int rate = SAMPLE_RATES[(h >>> 10) & 3];
+        int v = version(h);
+        return v == 3 ? rate : v == 2 ? rate / 2 : rate / 4;
+    }
+
+    /** Bitrate in bits per second */
+    static int bitrate(int h) {
+        int row = version(h) == 3 ? layer(h) - 1 : layer(h) == 1 ? 3 : 4;
+        return BITRATES[row][(h >>> 12) & 0xF] * 1000;
+    }
+
+    static int samplesPerFrame(int h) {
+        if (layer(h) == 1) {
+            return 384;
+        }
+        return layer(h) == 3 && version(h) != 3 ? 576 : 1152;
+    }
+
+    /** Length of the whole frame in bytes, header included */
+    static int frameLength(int h) {
+        int padding = (h >>> 9) & 1;
+        if (layer(h) == 1) {
+            return (12 * bitrate(h) / sampleRate(h) + padding) * 4;
+        }
+        return samplesPerFrame(h) / 8 * bitrate(h) / sampleRate(h) + padding;
+    }
+
+    /** Size of the layer 3 side information that precedes a Xing header */
+    static int sideInfoSize(int h) {
+        if (version(h) == 3) {
+            return isMono(h) ? 17 : 32;
+        }
+        return isMono(h) ? 9 : 17;
+    }
+
+    static ByteBuffer readAt(FileChannel ch, long pos, int len) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(len);
+        while (b.hasRemaining()) {
+            if (ch.read(b, pos + b.position()) < 0) {
+                break;
+            }
+        }
+        b.flip();
+        return b;
+    }
+
+    private static int syncsafe(ByteBuffer b, int at) {
+        return ((b.get(at) & 0x7F) << 21) | ((b.get(at + 1) & 0x7F) << 14)
+                | ((b.get(at + 2) & 0x7F) << 7) | (b.get(at + 3) & 0x7F);
+    }
+
+    /** Decodes an ID3v2 text frame body: encoding byte followed by text */
+    private static String text(ByteBuffer b) {
+        if (b.remaining() < 1) {
+            return "";
+        }
+        Charset cs;
+        switch (b.get(0)) {
+            case 1:
+                cs = StandardCharsets.UTF_16;
+                break;
+            case 2:
+                cs = StandardCharsets.UTF_16BE;
+                break;
+            case 3:
+                cs = StandardCharsets.UTF_8;
+                break;
+            default:
+                cs = StandardCharsets.ISO_8859_1;
+                break;
+        }
+        String s = new String(b.array(), 1, b.remaining() - 1, cs);
+        int nul = s.indexOf('\0');
+        return (nul >= 0 ? s.substring(0, nul) : s).trim();
+    }
+
+    private static String latin1(ByteBuffer b, int at, int len) {
+        String s = new String(b.array(), at, len, StandardCharsets.ISO_8859_1);
+        int nul = s.indexOf('\0');
+        return (nul >= 0 ? s.substring(0, nul) : s).trim();
+    }
+}
@@ -0,0 +1,338 @@
+/**
+ * PcmCache.java
+ * -------------------------------------
+ * Decoded audio of recently played tracks, kept outside the Java heap so
+ * that going back to a track starts it at once, without opening the file
+ * or decoding anything, and seeking in it is just a change of position.
+ *
+ * A track is stored as it is decoded for playback, in direct buffers of
+ * {@link #SEGMENT} bytes. The cache never holds more than its byte budget
+ * of segments; when it needs room it evicts the least recently used
+ * tracks that are not being played, and their segments are reused rather
+ * than freed, so native memory stays at the budget and the heap does not
+ * grow with it. Hits, misses and evictions are counted.
+ *
+ * The budget defaults to 256 MB, about six CD quality tracks of four
+ * minutes, and can be set with -Dplayer.pcmcache.mb or {@link #setBudget}.
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.sound.sampled.AudioFormat;
+
+public class PcmCache {
+
+    /** Size of one block of cached audio */
+    static final int SEGMENT = 1 << 20;
+    // Skipped tracks decoded to the end for the cache at the same time
+    private static final int MAX_FINISHING = 2;
+
+    private static long budget = Long.getLong("player.pcmcache.mb", 256) << 20;
+    // Guarded by the class: tracks by path in access order, spare segments,
+    // and bytes of segments in existence
+    private static final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private static final ArrayDeque<ByteBuffer> spare = new ArrayDeque<>();
+    private static long allocated;
+
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+    private static final AtomicLong evictions = new AtomicLong();
+    private static final AtomicInteger finishing = new AtomicInteger();
+
+    private PcmCache() {
+    }
+
+    /** One cached track; its segments stay put while a reader has it open */
+    private static final class Entry {
+        final String path;
+        final long size;
+        final long mtime;
+        final AudioFormat format;
+        final ByteBuffer[] segments;
+        final long length;
+        int readers;
+        boolean evicted;
+
+        Entry(String path, long size, long mtime, AudioFormat format, ByteBuffer[] segments, long length) {
+            this.path = path;
+            this.size = size;
+            this.mtime = mtime;
+            this.format = format;
+            this.segments = segments;
+            this.length = length;
+        }
+    }
+
+    public static long hits() {
+        return hits.get();
+    }
+
+    public static long misses() {
+        return misses.get();
+    }
+
+    public static long evictions() {
+        return evictions.get();
+    }
+
+    /** Bytes of audio held, and the budget they are held to */
+    public static synchronized String summary() {
+        long held = 0;
+        for (Entry e : entries.values()) {
+            held += e.length;
+        }
+        return String.format("%d tracks, %d of %d MB; %d hits, %d misses, %d evictions",
+                entries.size(), held >> 20, budget >> 20, hits.get(), misses.get(), evictions.get());
+    }
+
+    /** Sets the most bytes of audio the cache may hold, evicting at once if over */
+    public static synchronized void setBudget(long bytes) {
+        budget = Math.max(0, bytes);
+        while (allocated > budget && !spare.isEmpty()) {
+            spare.pop();
+            allocated -= SEGMENT;
+        }
+        while (allocated > budget && evictOne()) {
+            while (allocated > budget && !spare.isEmpty()) {
+                spare.pop();
+                allocated -= SEGMENT;
+            }
+        }
+    }
+
+    /**
+     * Opens a track's cached audio as a decoder that reads from memory.
+     * @return the decoder, or null if the track is not cached or has
+     *         changed on disk since
+     */
+    public static Decoder open(String path) {
+        long size;
+        long mtime;
+        try {
+            Path file = Paths.get(path);
+            size = Files.size(file);
+            mtime = Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException ex) {
+            misses.incrementAndGet();
+            return null;
+        }
+        synchronized (PcmCache.class) {
+            Entry e = entries.get(path);
+            if (e == null || e.size != size || e.mtime != mtime) {
+                misses.incrementAndGet();
+                return null;
+            }
+            e.readers++;
+            hits.incrementAndGet();
+            return new Reader(e);
+        }
+    }
+
+    /**
+     * Starts storing a track as it is decoded.
+     * @return the writer, or null if the file cannot be looked at
+     */
+    public static Writer writer(String path, AudioFormat format) {
+        try {
+            Path file = Paths.get(path);
+            return new Writer(path, Files.size(file), Files.getLastModifiedTime(file).toMillis(), format);
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Claims one of the few places for decoding a skipped track to its end
+     * just for the cache. Give it back with {@link #doneFinishing}.
+     * @return false if enough tracks are being finished already
+     */
+    static boolean startFinishing() {
+        if (finishing.incrementAndGet() > MAX_FINISHING) {
+            finishing.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    static void doneFinishing() {
+        finishing.decrementAndGet();
+    }
+
+    /** A spare or new segment, evicting tracks for room; null if none can be had */
+    private static synchronized ByteBuffer segment() {
+        while (true) {
+            if (!spare.isEmpty()) {
+                return spare.pop();
+            }
+            if (allocated + SEGMENT <= budget) {
+                allocated += SEGMENT;
+                return ByteBuffer.allocateDirect(SEGMENT);
+            }
+            if (!evictOne()) {
+                return null;
+            }
+        }
+    }
+
+    /** Drops the least recently used track nobody is reading */
+    private static boolean evictOne() {
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            Entry e = it.next();
+            if (e.readers == 0) {
+                it.remove();
+                release(e.segments, e.segments.length);
+                evictions.incrementAndGet();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static synchronized void release(ByteBuffer[] segments, int count) {
+        for (int i = 0; i < count; i++) {
+            segments[i].clear();
+            spare.push(segments[i]);
+        }
+    }
+
+    /** Fills segments as a track decodes, and adds the track once it is complete */
+    public static final class Writer {
+
+        private final String path;
+        private final long size;
+        private final long mtime;
+        private final AudioFormat format;
+        private final List<ByteBuffer> segments = new ArrayList<>();
+        private ByteBuffer last;
+        private long length;
+
+        private Writer(String path, long size, long mtime, AudioFormat format) {
+            this.path = path;
+            this.size = size;
+            this.mtime = mtime;
+            this.format = format;
+        }
+
+        /**
+         * Appends decoded bytes.
+         * @return false if the cache ran out of room; the writer is then aborted
+         */
+        public boolean write(byte[] buf, int off, int len) {
+            while (len > 0) {
+                if (last == null || !last.hasRemaining()) {
+                    last = segment();
+                    if (last == null) {
+                        abort();
+                        return false;
+                    }
+                    segments.add(last);
+                }
+                int n = Math.min(len, last.remaining());
+                last.put(buf, off, n);
+                off += n;
+                len -= n;
+                length += n;
+            }
+            return true;
+        }
+
+        /** Adds the track to the cache, replacing an older copy */
+        public void commit() {
+            Entry e = new Entry(path, size, mtime, format, segments.toArray(new ByteBuffer[0]), length);
+            synchronized (PcmCache.class) {
+                Entry old = entries.put(path, e);
+                if (old != null) {
+                    drop(old);
+                }
+            }
+            segments.clear();
+            last = null;
+        }
+
+        /** Gives back the segments of an unfinished track */
+        public void abort() {
+            release(segments.toArray(new ByteBuffer[0]), segments.size());
+            segments.clear();
+            last = null;
+        }
+    }
+
+    /** Releases an entry that left the map, now or when its last reader closes */
+    private static void drop(Entry e) {
+        e.evicted = true;
+        if (e.readers == 0) {
+            release(e.segments, e.segments.length);
+        }
+    }
+
+    /** Reads a cached track as if decoding it */
+    private static final class Reader implements Decoder {
+
+        private final Entry entry;
+        private long pos;
+        private boolean closed;
+
+        Reader(Entry entry) {
+            this.entry = entry;
+        }
+
+        @Override
+        public AudioFormat format() {
+            return entry.format;
+        }
+
+        @Override
+        public int read(byte[] buf, int off, int len) {
+            if (pos >= entry.length) {
+                return -1;
+            }
+            int n = (int) Math.min(len, entry.length - pos);
+            n -= n % entry.format.getFrameSize();
+            int done = 0;
+            while (done < n) {
+                ByteBuffer seg = entry.segments[(int) (pos / SEGMENT)];
+                int at = (int) (pos % SEGMENT);
+                int k = Math.min(n - done, SEGMENT - at);
+                seg.get(at, buf, off + done, k);
+                done += k;
+                pos += k;
+            }
+            return n;
+        }
+
+        @Override
+        public long audioFrames() {
+            return entry.length / entry.format.getFrameSize();
+        }
+
+        @Override
+        public boolean seek(long frame) {
+            pos = Math.max(0, Math.min(entry.length, frame * entry.format.getFrameSize()));
+            return true;
+        }
+
+        @Override
+        public void close() {
+            synchronized (PcmCache.class) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                if (--entry.readers == 0 && entry.evicted) {
+                    release(entry.segments, entry.segments.length);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/**
+ * PcmPool.java
+ * -------------------------------------
+ * Reuses the decode chunks and track rings of the playback path. Every
+ * track needs a chunk to decode into and a ring of a few seconds of audio;
+ * taking them from here instead of allocating them means playing one track
+ * after another creates no garbage at all, and the large rings in
+ * particular never have to be collected.
+ */
+
+public class PcmPool {
+
+    /** Size of a decode chunk in bytes */
+    static final int CHUNK = 8 * 1024;
+    /** Size of a track ring in bytes; about three seconds of CD audio */
+    static final int RING = 512 * 1024;
+
+    // Kept beyond this many, released buffers are left to the collector
+    private static final byte[][] chunks = new byte[16][];
+    private static final PcmRing[] rings = new PcmRing[8];
+    private static int chunkCount;
+    private static int ringCount;
+
+    private PcmPool() {
+    }
+
+    /** A decode chunk of {@link #CHUNK} bytes */
+    static synchronized byte[] chunk() {
+        if (chunkCount == 0) {
+            return new byte[CHUNK];
+        }
+        byte[] c = chunks[--chunkCount];
+        chunks[chunkCount] = null;
+        return c;
+    }
+
+    static synchronized void recycle(byte[] chunk) {
+        if (chunk.length == CHUNK && chunkCount < chunks.length) {
+            chunks[chunkCount++] = chunk;
+        }
+    }
+
+    /** An empty, open ring of {@link #RING} bytes */
+    static synchronized PcmRing ring() {
+        if (ringCount == 0) {
+            return new PcmRing(RING);
+        }
+        PcmRing r = rings[--ringCount];
+        rings[ringCount] = null;
+        r.reset();
+        return r;
+    }
+
+    /** Takes a ring back; neither side may touch it any more */
+    static synchronized void recycle(PcmRing ring) {
+        if (ringCount < rings.length) {
+            rings[ringCount++] = ring;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/**
+ * PcmRing.java
+ * -------------------------------------
+ * Fixed size ring of decoded audio bytes between one decoder thread and the
+ * audio thread. Each side only moves its own counter, so neither takes a
+ * lock: the audio thread never waits on the decoder, it just finds fewer
+ * bytes than it asked for. The decoder waits while the ring is full, which
+ * keeps a decoded track a couple of seconds ahead and no more.
+ */
+
+import java.util.concurrent.locks.LockSupport;
+
+public class PcmRing {
+
+    // How long the decoder sleeps when the ring is full
+    private static final long WAIT_NS = 2_000_000L;
+
+    private final byte[] buf;
+    private final int mask;
+
+    // Total bytes ever written and read; only the owning side writes each
+    private volatile long written;
+    private volatile long read;
+
+    private volatile boolean ended;
+    private volatile boolean closed;
+
+    /** @param capacity size in bytes, rounded up to a power of two */
+    public PcmRing(int capacity) {
+        int size = Integer.highestOneBit(Math.max(1024, capacity - 1)) << 1;
+        buf = new byte[size];
+        mask = size - 1;
+    }
+
+    /**
+     * Copies bytes in, waiting while the ring is full. Decoder side only.
+     * @return false if the ring was closed before everything was written
+     */
+    public boolean write(byte[] src, int off, int len) {
+        while (len > 0) {
+            if (closed) {
+                return false;
+            }
+            long w = written;
+            int free = buf.length - (int) (w - read);
+            if (free == 0) {
+                LockSupport.parkNanos(WAIT_NS);
+                continue;
+            }
+            int n = Math.min(len, free);
+            int at = (int) w & mask;
+            int first = Math.min(n, buf.length - at);
+            System.arraycopy(src, off, buf, at, first);
+            System.arraycopy(src, off + first, buf, 0, n - first);
+            written = w + n;
+            off += n;
+            len -= n;
+        }
+        return true;
+    }
+
+    /**
+     * Copies out whatever is there, up to len bytes, without waiting.
+     * Audio thread side only.
+     * @return number of bytes copied, 0 if the ring is empty
+     */
+    public int read(byte[] dst, int off, int len) {
+        long r = read;
+        int n = (int) Math.min(len, written - r);
+        if (n <= 0) {
+            return 0;
+        }
+        int at = (int) r & mask;
+        int first = Math.min(n, buf.length - at);
+        System.arraycopy(buf, at, dst, off, first);
+        System.arraycopy(buf, 0, dst, off + first, n - first);
+        read = r + n;
+        return n;
+    }
+
+    /** Bytes ready to be read */
+    public int available() {
+        return (int) (written - read);
+    }
+
+    /** Called by the decoder after its last write */
+    public void end() {
+        ended = true;
+    }
+
+    /** True once the decoder has written its last byte */
+    public boolean isEnded() {
+        return ended;
+    }
+
+    /** True once the decoder has ended and every byte was read */
+    public boolean isDrained() {
+        return ended && read == written;
+    }
+
+    /** Empties the ring for another track; only once neither side uses it */
+    public void reset() {
+        written = 0;
+        read = 0;
+        ended = false;
+        closed = false;
+    }
+
+    /** Makes a waiting or later write give up */
+    public void close() {
+        closed = true;
+    }
+}
@@ -0,0 +1,455 @@
+/**
+ * PlayStats.java
+ * -------------------------------------
+ * Play counts, skips and last-played times per track, backing the "Fav"
+ * sort and "most played" lists.
+ *
+ * Tracks are keyed by a 64-bit hash of their path, so the numbers survive
+ * the path ids changing between sessions. Counters live in parallel
+ * primitive arrays found through an open addressing table, and an indexed
+ * max-heap keeps the tracks ordered by score: recording a play costs
+ * O(log n), and the k best tracks are read in O(k log k) without looking
+ * at the rest of the library.
+ *
+ * Every change is appended to a journal file by a background writer. On
+ * open the journal is replayed, and rewritten as one record per track when
+ * it has grown well past the number of tracks.
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class PlayStats {
+
+    /** Default journal location in the user's home folder */
+    static final Path DEFAULT_FILE =
+            Paths.get(System.getProperty("user.home"), ".project-player", "plays.log");
+
+    /** A play shorter than this, ended by the user, counts as a skip */
+    static final long SKIP_MS = 30_000;
+
+    // Journal record types
+    private static final byte PLAY = 1;
+    private static final byte SKIP = 2;
+    private static final byte STATE = 3;
+
+    private static final int EMPTY = -1;
+
+    // Per track, indexed by slot
+    private long[] keys = new long[256];
+    private String[] slotPath = new String[256];
+    private int[] plays = new int[256];
+    private int[] skips = new int[256];
+    private long[] lastPlayed = new long[256];
+    private int[] heapPos = new int[256];
+    private int count;
+
+    // Slots ordered by score, best on top
+    private int[] heap = new int[256];
+
+    // Open addressing table of slots, keyed by path hash
+    private int[] table = newTable(512);
+
+    private final Path file;
+    private final ExecutorService writer;
+    private DataOutputStream journal;
+
+    // Bumped on every recorded play or skip, so views can tell when to re-read
+    private volatile int version;
+
+    private PlayStats(Path file) {
+        this.file = file;
+        this.writer = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "play-stats");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Loads the statistics saved in a journal file, or starts empty if
+     * there is none. Never returns null; an unreadable journal only costs
+     * the records after the damage.
+     */
+    public static PlayStats open(Path file) {
+        PlayStats stats = new PlayStats(file);
+        int records = 0;
+        boolean damaged = false;
+        if (Files.isRegularFile(file)) {
+            try (DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(Files.newInputStream(file)))) {
+                while (true) {
+                    byte op;
+                    try {
+                        op = in.readByte();
+                    } catch (EOFException end) {
+                        break;
+                    }
+                    stats.replay(op, in);
+                    records++;
+                }
+            } catch (IOException ex) {
+                System.out.println("⚠️ Play statistics partly unreadable: " + ex.getMessage());
+                damaged = true;
+            }
+        }
+        if (damaged || records > 2 * stats.count + 1024) {
+            stats.compact();
+        }
+        return stats;
+    }
+
+    /** Records that a track started playing */
+    public synchronized void played(String path) {
+        long now = System.currentTimeMillis();
+        int s = slot(path);
+        plays[s]++;
+        lastPlayed[s] = now;
+        siftUp(heapPos[s]);
+        version++;
+        append(PLAY, now, path);
+    }
+
+    /** Records that a track was skipped soon after it started */
+    public synchronized void skipped(String path) {
+        long now = System.currentTimeMillis();
+        int s = slot(path);
+        skips[s]++;
+        siftDown(heapPos[s]);
+        version++;
+        append(SKIP, now, path);
+    }
+
+    public synchronized int plays(String path) {
+        int s = find(hash(path));
+        return s == EMPTY ? 0 : plays[s];
+    }
+
+    public synchronized int skips(String path) {
+        int s = find(hash(path));
+        return s == EMPTY ? 0 : skips[s];
+    }
+
+    /** Last time the track started playing, or 0 if never */
+    public synchronized long lastPlayed(String path) {
+        int s = find(hash(path));
+        return s == EMPTY ? 0 : lastPlayed[s];
+    }
+
+    /** Changes whenever a play or skip is recorded */
+    public int version() {
+        return version;
+    }
+
+    /** Number of tracks that were ever played or skipped */
+    public synchronized int size() {
+        return count;
+    }
+
+    /**
+     * Returns the paths of the k favourite tracks, best first. Only the top
+     * of the heap is visited, so this is O(k log k) however big the library is.
+     */
+    public synchronized List<String> top(int k) {
+        return walk(k, false);
+    }
+
+    /**
+     * Returns the paths of the tracks played more often than skipped, best
+     * first. The walk stops at the first track that is not, so it costs
+     * O(k log k) for k such tracks.
+     */
+    public synchronized List<String> favourites() {
+        return walk(count, true);
+    }
+
+    /** Takes up to k tracks off the top of the heap, optionally only those with a positive score */
+    private List<String> walk(int k, boolean positive) {
+        k = Math.min(k, count);
+        List<String> out = new ArrayList<>();
+        // Frontier of heap positions whose parents were already taken
+        int[] frontier = new int[Math.min(k, 64) + 1];
+        int size = 0;
+        if (k > 0) {
+            frontier[size++] = 0;
+        }
+        while (out.size() < k) {
+            int best = frontier[0];
+            int s = heap[best];
+            if (positive && plays[s] <= skips[s]) {
+                break;
+            }
+            out.add(slotPath[s]);
+            frontier[0] = frontier[--size];
+            siftDownFrontier(frontier, size, 0);
+            if (size + 2 > frontier.length) {
+                frontier = Arrays.copyOf(frontier, frontier.length * 2);
+            }
+            for (int child = 2 * best + 1; child <= 2 * best + 2 && child < count; child++) {
+                frontier[size++] = child;
+                siftUpFrontier(frontier, size - 1);
+            }
+        }
+        return out;
+    }
+
+    /** Waits for pending journal writes and closes the file */
+    public void close() {
+        writer.submit(() -> {
+            try {
+                if (journal != null) {
+                    journal.close();
+                }
+            } catch (IOException ex) {
+                // nothing left to save
+            }
+        });
+        writer.shutdown();
+    }
+
+    // ---- ordering ----
+
+    /** True if slot a ranks above slot b: more net plays, then played more recently */
+    private boolean better(int a, int b) {
+        int sa = plays[a] - skips[a];
+        int sb = plays[b] - skips[b];
+        if (sa != sb) {
+            return sa > sb;
+        }
+        return lastPlayed[a] > lastPlayed[b];
+    }
+
+    private void siftUp(int i) {
+        int s = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!better(s, heap[parent])) {
+                break;
+            }
+            setHeap(i, heap[parent]);
+            i = parent;
+        }
+        setHeap(i, s);
+    }
+
+    private void siftDown(int i) {
+        int s = heap[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= count) {
+                break;
+            }
+            if (child + 1 < count && better(heap[child + 1], heap[child])) {
+                child++;
+            }
+            if (!better(heap[child], s)) {
+                break;
+            }
+            setHeap(i, heap[child]);
+            i = child;
+        }
+        setHeap(i, s);
+    }
+
+    private void setHeap(int i, int s) {
+        heap[i] = s;
+        heapPos[s] = i;
+    }
+
+    private void siftUpFrontier(int[] f, int i) {
+        int p = f[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!better(heap[p], heap[f[parent]])) {
+                break;
+            }
+            f[i] = f[parent];
+            i = parent;
+        }
+        f[i] = p;
+    }
+
+    private void siftDownFrontier(int[] f, int size, int i) {
+        if (size == 0) {
+            return;
+        }
+        int p = f[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && better(heap[f[child + 1]], heap[f[child]])) {
+                child++;
+            }
+            if (!better(heap[f[child]], heap[p])) {
+                break;
+            }
+            f[i] = f[child];
+            i = child;
+        }
+        f[i] = p;
+    }
+
+    // ---- slots ----
+
+    /** Returns the slot of a path, creating an empty one at the bottom of the heap */
+    private int slot(String path) {
+        long key = hash(path);
+        int s = find(key);
+        if (s != EMPTY) {
+            return s;
+        }
+
+        if (count == keys.length) {
+            int cap = count * 2;
+            keys = Arrays.copyOf(keys, cap);
+            slotPath = Arrays.copyOf(slotPath, cap);
+            plays = Arrays.copyOf(plays, cap);
+            skips = Arrays.copyOf(skips, cap);
+            lastPlayed = Arrays.copyOf(lastPlayed, cap);
+            heapPos = Arrays.copyOf(heapPos, cap);
+            heap = Arrays.copyOf(heap, cap);
+        }
+        s = count++;
+        keys[s] = key;
+        slotPath[s] = path;
+        setHeap(s, s);
+        siftUp(s);
+
+        if (count * 2 > table.length) {
+            int[] next = newTable(table.length * 2);
+            for (int i = 0; i < count; i++) {
+                place(next, i);
+            }
+            table = next;
+        } else {
+            place(table, s);
+        }
+        return s;
+    }
+
+    private int find(long key) {
+        int mask = table.length - 1;
+        for (int i = spread(key) & mask; table[i] != EMPTY; i = (i + 1) & mask) {
+            if (keys[table[i]] == key) {
+                return table[i];
+            }
+        }
+        return EMPTY;
+    }
+
+    private void place(int[] t, int s) {
+        int mask = t.length - 1;
+        int i = spread(keys[s]) & mask;
+        while (t[i] != EMPTY) {
+            i = (i + 1) & mask;
+        }
+        t[i] = s;
+    }
+
+    private static int[] newTable(int size) {
+        int[] t = new int[size];
+        Arrays.fill(t, EMPTY);
+        return t;
+    }
+
+    private static int spread(long key) {
+        return (int) (key ^ (key >>> 32));
+    }
+
+    /** 64-bit FNV-1a over the path's characters */
+    static long hash(String path) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < path.length(); i++) {
+            h ^= path.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    // ---- journal ----
+
+    private void replay(byte op, DataInputStream in) throws IOException {
+        long time = in.readLong();
+        String path = in.readUTF();
+        int s = slot(path);
+        switch (op) {
+            case PLAY:
+                plays[s]++;
+                lastPlayed[s] = Math.max(lastPlayed[s], time);
+                break;
+            case SKIP:
+                skips[s]++;
+                break;
+            case STATE:
+                plays[s] += in.readInt();
+                skips[s] += in.readInt();
+                lastPlayed[s] = Math.max(lastPlayed[s], time);
+                break;
+            default:
+                throw new IOException("Bad record type " + op);
+        }
+        siftUp(heapPos[s]);
+        siftDown(heapPos[s]);
+    }
+
+    private void append(byte op, long time, String path) {
+        writer.execute(() -> {
+            try {
+                DataOutputStream out = journal();
+                out.writeByte(op);
+                out.writeLong(time);
+                out.writeUTF(path);
+                out.flush();
+            } catch (IOException ex) {
+                System.out.println("⚠️ Could not save play statistics: " + ex.getMessage());
+            }
+        });
+    }
+
+    /** Opens the journal for appending; only called on the writer thread */
+    private DataOutputStream journal() throws IOException {
+        if (journal == null) {
+            Files.createDirectories(file.getParent());
+            journal = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)));
+        }
+        return journal;
+    }
+
+    /** Rewrites the journal as one state record per track */
+    private void compact() {
+        try {
+            Files.createDirectories(file.getParent());
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                for (int s = 0; s < count; s++) {
+                    out.writeByte(STATE);
+                    out.writeLong(lastPlayed[s]);
+                    out.writeUTF(slotPath[s]);
+                    out.writeInt(plays[s]);
+                    out.writeInt(skips[s]);
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            System.out.println("⚠️ Could not compact play statistics: " + ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,568 @@
+/**
+ * PlaybackEngine.java
+ * -------------------------------------
+ * Plays tracks back to back without a gap. While a track plays, the next
+ * one is already open and decoding into its own buffer, and when the first
+ * runs out the audio thread carries on with the second's samples through
+ * the same open output line: there is no file to open, no decoder to warm
+ * up and no line to reopen between tracks. The line is only reopened when
+ * the next track has a different sample format.
+ *
+ * Skipping to another track while one plays crossfades the two: the old
+ * track keeps decoding and is mixed out under the new one by a
+ * {@link CrossfadeMixer}. Tracks that end on their own can be crossfaded
+ * the same way; by default they join gaplessly instead.
+ *
+ * Seeking replaces the current stream with one that starts at the new
+ * point. The position is reported from the line's own frame counter, so it
+ * follows what is heard rather than what was decoded.
+ *
+ * The audio thread is the only writer to the {@link AudioOutput}, and runs
+ * at the highest priority; the output's buffer and period can be tuned
+ * and it counts underruns and write latency.
+ *
+ * Tracks that are dropped hand their buffers back to {@link PcmPool} once
+ * the audio thread and their decoder are both done with them, so going
+ * from track to track does not churn the heap.
+ *
+ * The engine does not know the playlist. It is told what to play now and
+ * what comes next, and reports back when a track starts sounding.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+import javax.sound.sampled.AudioFormat;
+
+public class PlaybackEngine {
+
+    // How long the audio thread waits for a decoder that fell behind
+    private static final long UNDERRUN_WAIT_NS = 1_000_000L;
+    // How often a stopped audio thread looks for buffers to give back
+    private static final long RECYCLE_WAIT_MS = 50;
+    // Position reports are sent when the position moves into a new step
+    private static final long POSITION_STEP_MS = 100;
+
+    /** Reports from the audio thread; implementations must not block */
+    public interface Listener {
+        /** The first samples of a track were handed to the output */
+        void trackStarted(int id);
+
+        /** A track could not be decoded or played and was passed over */
+        void trackFailed(int id, String reason);
+
+        /** The last track ended with nothing queued after it */
+        void finished();
+
+        /** Playback reached a new position in a track, in ms */
+        void positionChanged(int id, long ms);
+    }
+
+    private final Listener listener;
+
+    // Guarded by this; the audio thread reads them at every chunk
+    private TrackStream current;
+    private TrackStream upcoming;
+    private boolean paused;
+    private boolean flush;
+    // Track being faded out under the current one, and the fade's length
+    private TrackStream outgoing;
+    private long fadeMs;
+    private int crossfadeMs = 1000;
+    private boolean fadeTrackEnds;
+    // Dropped tracks whose buffers go back to the pool; audio thread recycles them
+    private final List<TrackStream> retired = new ArrayList<>();
+
+    // Audio thread's buffer, and the volume stage working on it
+    private final byte[] chunk = new byte[AudioOutput.MAX_PERIOD];
+    private final GainStage gain = new GainStage(chunk);
+    // Levels each track's own audio before mixing, so that a fade mixes two
+    // leveled tracks and the volume stage only ever sees the result
+    private final GainStage leveler = new GainStage(chunk);
+    private final CrossfadeMixer mixer = new CrossfadeMixer(chunk);
+    // Audio thread only: the outgoing and incoming track of the running fade
+    private TrackStream fadingFrom;
+    private TrackStream fadingTo;
+    // Audio thread only: the track whose level the leveler is at
+    private TrackStream leveled;
+
+    // The audio thread, if running, and whether close() asked it to end;
+    // guarded by this
+    private Thread audio;
+    private boolean closing;
+    private final AudioOutput output;
+
+    // Audio thread only: frames written to the line since it was opened,
+    // and where the track being positioned started among them
+    private long lineFrames;
+    private long trackBase;
+    private TrackStream positioned;
+    private long lastStep = -1;
+
+    public PlaybackEngine(Listener listener) {
+        this(listener, new AudioOutput());
+    }
+
+    /** An engine playing to the given output; every engine needs its own */
+    public PlaybackEngine(Listener listener, AudioOutput output) {
+        this.listener = listener;
+        this.output = output;
+    }
+
+    /**
+     * Starts a track now, dropping whatever was queued. A track that is
+     * playing is crossfaded into the new one, unless crossfading is off.
+     * @param level gain that levels the track's loudness, 1 to leave it
+     */
+    public synchronized void play(int id, String path, float level) {
+        awaitClosed();
+        TrackStream next = new TrackStream(id, path);
+        next.level = level;
+        if (crossfadeMs > 0 && current != null && !paused && current.format() != null) {
+            retire(outgoing);
+            retire(upcoming);
+            outgoing = current;
+            upcoming = null;
+            fadeMs = crossfadeMs;
+        } else {
+            closeStreams();
+            discardOutput();
+        }
+        current = next;
+        paused = false;
+        if (audio == null) {
+            audio = new Thread(this::run, "audio-out");
+            audio.setDaemon(true);
+            audio.setPriority(Thread.MAX_PRIORITY);
+            audio.start();
+        }
+        notifyAll();
+    }
+
+    /**
+     * Sets the track to follow the current one, and starts decoding it.
+     * @param id track id, or -1 if nothing follows
+     * @param level gain that levels the track's loudness, 1 to leave it
+     */
+    public synchronized void preload(int id, String path, float level) {
+        if (current == null || (upcoming != null && upcoming.id == id && upcoming.level == level)) {
+            return;
+        }
+        retire(upcoming);
+        upcoming = id < 0 ? null : new TrackStream(id, path);
+        if (upcoming != null) {
+            upcoming.level = level;
+        }
+    }
+
+    /**
+     * Jumps to a point in the current track. Only the new point has to be
+     * decoded; the track is not counted as started again.
+     */
+    public synchronized void seek(long ms) {
+        if (current == null) {
+            return;
+        }
+        TrackStream s = new TrackStream(current.id, current.path, Math.max(0, ms), true);
+        s.level = current.level;
+        retire(current);
+        retire(outgoing);
+        outgoing = null;
+        current = s;
+        discardOutput();
+        notifyAll();
+    }
+
+    /**
+     * Sets how long skipping from one track to another crossfades.
+     * @param ms fade length, or 0 to cut straight to the new track
+     */
+    public synchronized void setCrossfade(int ms) {
+        crossfadeMs = Math.max(0, ms);
+    }
+
+    /** Whether tracks that end on their own crossfade too, instead of joining gaplessly */
+    public synchronized void setCrossfadeTrackEnds(boolean on) {
+        fadeTrackEnds = on;
+    }
+
+    public synchronized void pause() {
+        if (current == null || paused) {
+            return;
+        }
+        paused = true;
+        output.stop();
+    }
+
+    public synchronized void resume() {
+        if (!paused) {
+            return;
+        }
+        paused = false;
+        output.start();
+        notifyAll();
+    }
+
+    /** Stops playback and forgets the current and next track */
+    public synchronized void stop() {
+        closeStreams();
+        paused = false;
+        discardOutput();
+    }
+
+    /**
+     * Stops playback, ends the audio thread and closes the output, and
+     * waits until the thread is gone. Playing again starts a new audio
+     * thread.
+     */
+    public void close() {
+        Thread t;
+        synchronized (this) {
+            stop();
+            t = audio;
+            if (t == null) {
+                return;
+            }
+            closing = true;
+            notifyAll();
+        }
+        if (t == Thread.currentThread()) {
+            return;
+        }
+        // A write in progress returns early once the line is flushed
+        try {
+            t.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Waits for an audio thread that is closing to end, so that there is
+     * never more than one writer to the output.
+     */
+    private void awaitClosed() {
+        boolean interrupted = false;
+        while (closing) {
+            try {
+                wait();
+            } catch (InterruptedException ex) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Volume as a linear gain from 0 to 1; the change is ramped */
+    public void setGain(float g) {
+        gain.setGain(g);
+    }
+
+    /**
+     * Tunes the output: a larger line buffer rides out a busy machine,
+     * a smaller one responds sooner. Takes effect at the next write.
+     */
+    public void setBuffering(int bufferMs, int periodMs) {
+        output.configure(bufferMs, periodMs);
+    }
+
+    /** The output stage, for its underrun and latency counters */
+    public AudioOutput output() {
+        return output;
+    }
+
+    /** Changes the leveling gain of the track playing now; it glides there */
+    public synchronized void setLevel(float level) {
+        if (current != null) {
+            current.level = level;
+        }
+    }
+
+    public void setMuted(boolean m) {
+        gain.setMuted(m);
+    }
+
+    public boolean isMuted() {
+        return gain.isMuted();
+    }
+
+    public synchronized boolean isPaused() {
+        return paused;
+    }
+
+    public synchronized boolean isStopped() {
+        return current == null;
+    }
+
+    private void closeStreams() {
+        retire(current);
+        retire(upcoming);
+        retire(outgoing);
+        current = null;
+        upcoming = null;
+        outgoing = null;
+    }
+
+    /** Stops a dropped track's decoder; its buffers are recycled later */
+    private void retire(TrackStream s) {
+        if (s != null) {
+            s.close();
+            retired.add(s);
+        }
+    }
+
+    /**
+     * Returns the buffers of dropped tracks whose decoders have ended.
+     * Audio thread only, between chunks, when it holds no track itself.
+     */
+    private void recycleRetired() {
+        for (int i = retired.size() - 1; i >= 0; i--) {
+            if (retired.get(i).recycle()) {
+                retired.remove(i);
+            }
+        }
+    }
+
+    /** Drops audio already given to the line; the audio thread drops its pending chunk */
+    private void discardOutput() {
+        flush = true;
+        output.flush();
+    }
+
+    // ---- audio thread ----
+
+    private void run() {
+        try {
+            loop();
+        } finally {
+            output.close();
+            synchronized (this) {
+                audio = null;
+                closing = false;
+                notifyAll();
+            }
+        }
+    }
+
+    /** Plays until close() */
+    private void loop() {
+        int off = 0;
+        int len = 0;
+        TrackStream announced = null;
+
+        while (true) {
+            TrackStream s;
+            TrackStream o;
+            long fade;
+            boolean flushed = false;
+            synchronized (this) {
+                recycleRetired();
+                while ((current == null || paused) && !closing) {
+                    try {
+                        wait(retired.isEmpty() ? 0 : RECYCLE_WAIT_MS);
+                    } catch (InterruptedException ex) {
+                        // only close() ends the thread
+                    }
+                    recycleRetired();
+                }
+                if (closing) {
+                    return;
+                }
+                if (flush) {
+                    flush = false;
+                    flushed = true;
+                    len = 0;
+                }
+                if (fadeTrackEnds && outgoing == null) {
+                    fadeIntoUpcoming();
+                }
+                s = current;
+                o = outgoing;
+                fade = fadeMs;
+            }
+            if (flushed && output.framePosition() >= 0) {
+                // Flushed frames were never played; count from what was
+                lineFrames = output.framePosition();
+            }
+
+            if (len > 0) {
+                // Returns early if the line is stopped or flushed meanwhile
+                int n = output.write(chunk, off, len);
+                off += n;
+                len -= n;
+                lineFrames += n / output.format().getFrameSize();
+                reportPosition();
+                continue;
+            }
+
+            AudioFormat f = s.format();
+            int n = f == null ? 0 : s.ring.read(chunk, 0, output.periodBytes(f));
+            if (n == 0 && o != null && o != fadingFrom) {
+                // The new track is still opening; the old one plays on meanwhile
+                AudioFormat of = o.format();
+                n = o.ring.read(chunk, 0, output.periodBytes(of));
+                if (n > 0) {
+                    level(o, n, of);
+                    gain.process(n, of.getChannels(), of.getSampleRate());
+                    off = 0;
+                    len = n;
+                    continue;
+                }
+                if (o.ring.isDrained()) {
+                    endFade(o);
+                }
+            }
+            if (n > 0) {
+                level(s, n, f);
+            }
+            if (n > 0 && o != null) {
+                if (!f.matches(o.format())) {
+                    endFade(o); // different formats cannot be mixed; cut
+                } else {
+                    if (o != fadingFrom) {
+                        // Taking over from an unfinished fade starts where the gains match
+                        double at = o == fadingTo && !mixer.isDone() ? 1 - mixer.progress() : 0;
+                        mixer.start((long) (fade * f.getFrameRate() / 1000), at);
+                        fadingFrom = o;
+                        fadingTo = s;
+                    }
+                    if (mixer.mix(n, o.ring, f.getChannels(), o.level)) {
+                        endFade(o);
+                    }
+                }
+            }
+            if (n > 0) {
+                if (!openLine(f)) {
+                    s.close();
+                    advance(s, "No audio output for " + f);
+                    continue;
+                }
+                if (s != announced) {
+                    announced = s;
+                    if (!s.continues) {
+                        listener.trackStarted(s.id);
+                    }
+                }
+                if (s != positioned) {
+                    positioned = s;
+                    trackBase = lineFrames;
+                }
+                gain.process(n, f.getChannels(), f.getSampleRate());
+                off = 0;
+                len = n;
+                continue;
+            }
+            if (!s.ring.isDrained()) {
+                // Decoder fell behind, or the file is still opening
+                output.stalled();
+                LockSupport.parkNanos(UNDERRUN_WAIT_NS);
+                continue;
+            }
+            advance(s, s.error());
+        }
+    }
+
+    /**
+     * Applies a track's leveling gain to its audio in the chunk. A track
+     * taking over starts at its own level; a change within a track glides.
+     */
+    private void level(TrackStream s, int n, AudioFormat f) {
+        if (s != leveled) {
+            leveled = s;
+            leveler.jumpToLevel(s.level);
+        } else {
+            leveler.setLevel(s.level);
+        }
+        leveler.process(n, f.getChannels(), f.getSampleRate());
+    }
+
+    /**
+     * Starts a fade from the current track into the preloaded one when the
+     * current track has no more than the fade length left. Caller holds the lock.
+     */
+    private void fadeIntoUpcoming() {
+        TrackStream s = current;
+        TrackStream u = upcoming;
+        AudioFormat f = s == null ? null : s.format();
+        if (f == null || u == null || u.format() == null || !s.ring.isEnded()
+                || !f.matches(u.format()) || crossfadeMs == 0) {
+            return;
+        }
+        long left = s.ring.available() / f.getFrameSize();
+        long window = (long) (crossfadeMs * f.getFrameRate() / 1000);
+        if (left <= window) {
+            outgoing = s;
+            current = u;
+            upcoming = null;
+            fadeMs = (long) (left * 1000 / f.getFrameRate());
+        }
+    }
+
+    /** Drops the outgoing track once its fade is over */
+    private void endFade(TrackStream o) {
+        synchronized (this) {
+            if (outgoing == o) {
+                retire(o);
+                outgoing = null;
+            }
+        }
+        fadingFrom = null;
+    }
+
+    /** Tells the listener when the heard position enters a new step */
+    private void reportPosition() {
+        TrackStream s = positioned;
+        AudioFormat f = output.format();
+        if (s == null || f == null) {
+            return;
+        }
+        long played = Math.max(0, output.framePosition() - trackBase);
+        long ms = (long) ((s.startFrame() + played) * 1000 / f.getFrameRate());
+        long step = ms / POSITION_STEP_MS;
+        if (step != lastStep) {
+            lastStep = step;
+            listener.positionChanged(s.id, ms);
+        }
+    }
+
+    /** Moves on from a finished track to the preloaded one, if any */
+    private void advance(TrackStream done, String error) {
+        boolean last;
+        synchronized (this) {
+            if (current != done) {
+                return; // replaced while we looked at it
+            }
+            retire(done);
+            current = upcoming;
+            upcoming = null;
+            last = current == null;
+        }
+        if (error != null) {
+            listener.trackFailed(done.id, error);
+        }
+        if (last) {
+            output.drain();
+            listener.finished();
+        }
+    }
+
+    /** Makes sure the line is open for the format, reopening it only on a change */
+    private boolean openLine(AudioFormat f) {
+        int opened = output.open(f);
+        if (opened < 0) {
+            return false;
+        }
+        if (opened > 0) {
+            lineFrames = 0;
+            trackBase = 0;
+            synchronized (this) {
+                if (paused) {
+                    output.stop();
+                }
+            }
+        }
+        return true;
+    }
+}
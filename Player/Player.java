@@ -9,8 +9,8 @@
 /**
  * 🎵 Player.java
  * -------------------------------------
- * This class manages playback using the MP3Player library.
- * It supports adding, removing, and reloading songs from a given path.
+ * This class manages playback through the gapless PlaybackEngine.
+ * It supports adding and removing songs from a given path.
  * 
  * Minor improvements and documentation added for Hacktoberfest 2025.
  *
@@ -19,21 +19,133 @@
 
 /* imports */
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
-import jaco.mp3.player.MP3Player; // Importing MP3 player library
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
 
 public class Player {
 
     // Static variables for playback
     static String path1 = "";
-    static MP3Player player = new MP3Player();
 
-    // UI and file handling
-    ListFrame lf = new ListFrame();
+    /** Loudness leveling modes: none, per track, or per album */
+    static final int LEVEL_OFF = 0;
+    static final int LEVEL_TRACK = 1;
+    static final int LEVEL_ALBUM = 2;
+    // Tracks are leveled to this loudness, in LUFS (as ReplayGain 2.0 does)
+    private static final float REFERENCE_LUFS = -18f;
+    // Leveled peaks stay this far below full scale
+    private static final float HEADROOM = 0.98f;
+    private static int leveling = LEVEL_TRACK;
+
+    // File handling
     File file;
 
-    // Playlist
-    private static ArrayList<String> pList = new ArrayList<>();
+    // Playlist of path ids, O(log n) positional edits
+    private static IndexedList pList = new IndexedList();
+    // Paths of every known track, folders shared
+    static final PathStore paths = new PathStore();
+    // Ids that are in the playlist
+    private static final BitSet queued = new BitSet();
+    // Words of names and tags, for the playlist filter
+    static final SearchIndex search = new SearchIndex();
+    private static ExecutorService indexer;
+    // Whether a purge of stale search words waits on the indexer
+    private static final AtomicBoolean purgeQueued = new AtomicBoolean();
+    // Bumped on every playlist edit, to detect stale background results
+    private static int edits;
+    // Bumped under the class lock when a track is removed, before its id
+    // can be reused, so writers reading a snapshot of ids can tell
+    private static volatile int releases;
+
+    // Runs library and engine updates one at a time. The GUI uses the EDT;
+    // the headless daemon has its own thread, so "the EDT" in the notes
+    // below means whichever of the two is in use
+    private static volatile Executor events = r -> SwingUtilities.invokeLater(r);
+
+    /** The zone that plays the playlist, and its engine */
+    static final PlayerZone zone = new PlayerZone("playlist", pList, r -> events.execute(r), new AudioOutput());
+    static final PlaybackEngine player = zone.engine();
+
+    // Views and queues that mirror every playlist edit
+    private static final List<PlaylistListener> listeners = new ArrayList<>();
+
+    static {
+        listeners.add(zone.queueSync());
+    }
+
+    // Library: entries by path id, and the folders it was loaded from
+    private static TrackInfo[] infos = new TrackInfo[1024];
+    private static final List<String> roots = new ArrayList<>();
+    // Catalog restored at startup; the entries of the ids it was given are
+    // read from it when first asked for, until the validator has read them all
+    private static LibraryCatalog restored;
+    private static int restoredFrom;
+    private static final BitSet unread = new BitSet();
+    // Album leveling totals by artist and album: block weighted energy,
+    // blocks and loudest peak of the measured tracks. Built on first use and
+    // kept up as results come in; an album whose track changes or goes is
+    // dropped and worked out again when next asked for
+    private static Map<String, double[]> albums;
+
+    // Library scans currently feeding the playlist, if any
+    private static final List<LibraryScanner> scans = new ArrayList<>();
+    // Told whether scans are running whenever that changes, on the EDT
+    private static volatile Consumer<Boolean> scanView;
+    private static LibraryWatcher watcher;
+
+    // Coalesces catalog writes after library changes
+    private static ScheduledExecutorService saveTimer;
+    private static ScheduledFuture<?> saveDue;
+    // Saves taken on the EDT, and the newest one written; writers take
+    // turns on the lock so an older snapshot never replaces a newer one
+    private static int savesTaken;
+    private static int savesWritten;
+    private static final Object saveLock = new Object();
+
+    // Reads tags of new tracks in the background, at most this many queued
+    private static MetadataPipeline tagger;
+    private static final int TAG_QUEUE = 8192;
+    // Whether tracks were added while the tagger's queue was full; event thread only
+    private static boolean tagBehind;
+    // Measures the loudness of tagged tracks in the background
+    private static LoudnessAnalyzer analyzer;
+    private static final int LOUDNESS_QUEUE = 1024;
+    // Whether a thread is still queueing the library for analysis
+    private static volatile boolean analyzeFeeding;
+
+    // Play counts and skips; the journal is read on the "play-counts"
+    // thread at startup, which also records every play and skip after that
+    private static final CompletableFuture<PlayStats> stats = new CompletableFuture<>();
+    private static final ExecutorService countsThread = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "play-counts");
+        t.setDaemon(true);
+        return t;
+    });
+    // Play counts by path id, so painting a row takes no lock and does no
+    // I/O; written in place by the counts thread, republished after each change
+    private static int[] counts = new int[1024];
+    private static volatile int[] playCounts = counts;
+    private static volatile int countsVersion;
+
+    static {
+        countsThread.execute(() -> stats.complete(PlayStats.open(PlayStats.DEFAULT_FILE)));
+    }
 
     /** Default constructor */
     public Player() {
@@ -43,132 +155,1198 @@ public class Player {
     }
 
     /**
-     * Retrieves MP3 files from the specified directory and adds them to playlist.
+     * Scans the specified directory tree in the background and streams the
+     * MP3 files found into the playlist in batches.
      * @param path directory path containing MP3 files
      */
     public void retrive(String path) {
         path1 = path;
         File folder = new File(path);
-        File[] listOfFiles = folder.listFiles();
 
-        if (listOfFiles == null) {
+        if (!folder.isDirectory()) {
             System.out.println("⚠️ No files found in: " + path);
             return;
         }
 
-        for (File listOfFile : listOfFiles) {
-            if (listOfFile.isFile()) {
-                String name = listOfFile.getName();
-                if (name.endsWith(".mp3")) {
-                    addList(name);
+        Path root = folder.toPath().toAbsolutePath().normalize();
+        if (watcher != null && watcher.isWatching(root)) {
+            // Already in the library and kept up to date by the watcher
+            System.out.println("📂 Already watching: " + path);
+            return;
+        }
+        if (!roots.contains(root.toString())) {
+            roots.add(root.toString());
+        }
+        scan(root);
+    }
+
+    /** Scans one library root and starts watching its folders */
+    private void scan(Path root) {
+        startWatcher();
+        LibraryScanner s = new LibraryScanner(
+                batch -> events.execute(() -> addBatch(batch)));
+        if (watcher != null) {
+            watcher.addRoot(root);
+            s.setOnDirectory(watcher::register);
+        }
+        s.setOnFinish(() -> {
+            System.out.println("📂 Scanned " + s.filesFound() + " files in "
+                    + s.elapsedMillis() + " ms (" + Math.round(s.filesPerSecond()) + " files/s)");
+            events.execute(() -> {
+                scans.remove(s);
+                showScanning();
+                scheduleSave();
+            });
+        });
+        scans.add(s);
+        showScanning();
+        s.scan(root.toString());
+    }
+
+    /**
+     * Adds the tracks of an M3U, M3U8 or PLS file to the playlist. The file
+     * is read in the background and its tracks arrive in batches.
+     * @param file playlist file
+     */
+    public void importPlaylist(String file) {
+        Thread reader = new Thread(() -> {
+            long start = System.nanoTime();
+            try {
+                int skipped = PlaylistIO.read(Paths.get(file), (batch, done) ->
+                        events.execute(() -> {
+                            addBatch(batch);
+                            done.run();
+                        }));
+                System.out.println("📃 Imported " + file + " in " + (System.nanoTime() - start) / 1_000_000L
+                        + " ms" + (skipped > 0 ? ", skipped " + skipped + " missing or unsupported entries" : ""));
+                events.execute(Player::scheduleSave);
+            } catch (IOException ex) {
+                System.out.println("⚠️ Cannot read playlist: " + ex.getMessage());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }, "playlist-import");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Saves the playlist as M3U8, or PLS if the file name ends in .pls.
+     * Call on the EDT; the file is written in the background.
+     * @param file playlist file to create or replace
+     */
+    public void exportPlaylist(String file) {
+        int[] ids = snapshotIds();
+        int released = releases;
+        Thread writer = new Thread(() -> {
+            String[] trackPaths = new String[ids.length];
+            TrackInfo[] tags = new TrackInfo[ids.length];
+            if (!gather(ids, released, trackPaths, tags)) {
+                // A track was removed meanwhile; export what is there now
+                events.execute(() -> exportPlaylist(file));
+                return;
+            }
+            try {
+                PlaylistIO.write(Paths.get(file), ids.length, i -> trackPaths[i], i -> tags[i]);
+                System.out.println("📃 Saved " + ids.length + " tracks to " + file);
+            } catch (IOException | IllegalArgumentException ex) {
+                System.out.println("⚠️ Could not save playlist: " + ex.getMessage());
+            }
+        }, "playlist-export");
+        writer.start();
+    }
+
+    /** Cancels the library scans that are still running, if any */
+    public static void cancelScan() {
+        for (LibraryScanner s : scans) {
+            s.cancel();
+        }
+        scans.clear();
+        showScanning();
+    }
+
+    /** Whether library scans are still running; call on the EDT */
+    public static boolean isScanning() {
+        return !scans.isEmpty();
+    }
+
+    /** Sets the view that is told whether scans are running, on the EDT, whenever that changes */
+    public static void setScanView(Consumer<Boolean> view) {
+        scanView = view;
+    }
+
+    private static void showScanning() {
+        Consumer<Boolean> view = scanView;
+        if (view != null) {
+            view.accept(!scans.isEmpty());
+        }
+    }
+
+    /** Creates the folder watcher the first time a library folder is loaded */
+    private void startWatcher() {
+        if (watcher != null) {
+            return;
+        }
+        try {
+            watcher = new LibraryWatcher((added, removed, removedDirs, rescanned) ->
+                    events.execute(() -> applyChanges(added, removed, removedDirs, rescanned)));
+            watcher.start();
+        } catch (IOException ex) {
+            System.out.println("⚠️ Folder watching unavailable: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Applies the changes reported by the folder watcher to the playlist,
+     * the player and the list. Must be called on the event dispatch thread.
+     */
+    void applyChanges(List<String> added, List<String> removed,
+            List<String> removedDirs, List<String> rescanned) {
+        BitSet gone = new BitSet();
+        for (String path : removed) {
+            int id = paths.find(path);
+            if (id >= 0) {
+                gone.set(id);
+            }
+        }
+
+        if (!removedDirs.isEmpty() || !rescanned.isEmpty()) {
+            List<Integer> deadDirs = dirIds(removedDirs);
+            List<Integer> relisted = dirIds(rescanned);
+            BitSet present = new BitSet();
+            for (String path : added) {
+                int id = paths.find(path);
+                if (id >= 0) {
+                    present.set(id);
+                }
+            }
+            for (int id : pList.toArray()) {
+                for (int dir : deadDirs) {
+                    if (paths.isUnder(id, dir)) {
+                        gone.set(id);
+                    }
+                }
+                if (!present.get(id)) {
+                    for (int dir : relisted) {
+                        if (paths.isUnder(id, dir)) {
+                            gone.set(id);
+                        }
+                    }
+                }
+            }
+        }
+
+        if (!gone.isEmpty()) {
+            // Walk backwards so earlier indexes stay valid
+            for (int i = pList.size() - 1; i >= 0; i--) {
+                if (gone.get(pList.get(i))) {
+                    removeAt(i);
+                }
+            }
+        }
+        addBatch(added);
+        scheduleSave();
+    }
+
+    private static List<Integer> dirIds(List<String> dirs) {
+        List<Integer> ids = new ArrayList<>();
+        for (String dir : dirs) {
+            int id = paths.findDir(dir);
+            if (id >= 0) {
+                ids.add(id);
+            }
+        }
+        return ids;
+    }
+
+    /** Library entry of a track, or null if nothing is known yet */
+    static synchronized TrackInfo info(int id) {
+        if (id < 0 || id >= infos.length) {
+            return null;
+        }
+        if (infos[id] == null && unread.get(id)) {
+            infos[id] = restored.info(id - restoredFrom);
+            unread.clear(id);
+        }
+        return infos[id];
+    }
+
+    static void setInfo(int id, TrackInfo t) {
+        TrackInfo old = storeInfo(id, t);
+        PlaylistSorter.invalidate(id);
+        if (old != null && old.tagged) {
+            // The old tags' words go stale, even if there are no new tags
+            search.replace(id, searchText(id));
+            purgeIfStale();
+        } else if (t != null && t.tagged) {
+            search.add(id, searchText(id));
+        }
+    }
+
+    /** Stores a library entry without updating the search index; returns the old one */
+    private static synchronized TrackInfo storeInfo(int id, TrackInfo t) {
+        if (id >= infos.length) {
+            infos = Arrays.copyOf(infos, Math.max(id + 1, infos.length * 2));
+        }
+        TrackInfo old = infos[id];
+        infos[id] = t;
+        unread.clear(id);
+        if (albums != null) {
+            if (measured(old)) {
+                albums.remove(albumKey(old));
+            }
+            addToAlbum(t);
+        }
+        return old;
+    }
+
+    /** Words the filter finds a track by: file name without extension, and tags */
+    static String searchText(int id) {
+        String name = paths.name(id);
+        int dot = name.lastIndexOf('.');
+        if (dot > 0) {
+            name = name.substring(0, dot);
+        }
+        TrackInfo t = info(id);
+        return t == null ? name : name + " " + t.title + " " + t.artist + " " + t.album;
+    }
+
+    /** Indexes the names of new tracks in the background */
+    private static void indexLater(int[] ids) {
+        indexer().execute(() -> {
+            for (int id : ids) {
+                try {
+                    search.add(id, searchText(id));
+                } catch (IllegalArgumentException removed) {
+                    // removed meanwhile, and its name reclaimed
+                }
+            }
+        });
+        countsThread.execute(() -> {
+            PlayStats s = stats.join();
+            for (int id : ids) {
+                try {
+                    setCount(id, s.plays(paths.path(id)));
+                } catch (IllegalArgumentException removed) {
+                    // counted again if its id is reused
                 }
             }
+            publishCounts();
+        });
+    }
+
+    /** Creates the search indexing thread on first use */
+    private static synchronized ExecutorService indexer() {
+        if (indexer == null) {
+            indexer = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "search-index");
+                t.setDaemon(true);
+                t.setPriority(Thread.NORM_PRIORITY - 1);
+                return t;
+            });
+        }
+        return indexer;
+    }
+
+    /** Has the indexing thread purge stale words once enough tracks changed or went */
+    private static void purgeIfStale() {
+        if (search.isStale() && purgeQueued.compareAndSet(false, true)) {
+            indexer().execute(() -> {
+                purgeQueued.set(false);
+                search.purge(Player::searchText);
+            });
         }
+    }
+
+    /** Counts thread only */
+    private static void setCount(int id, int plays) {
+        if (id >= counts.length) {
+            counts = Arrays.copyOf(counts, Math.max(id + 1, counts.length * 2));
+        }
+        counts[id] = plays;
+    }
+
+    /** Counts thread only; makes the counts written so far visible to painting */
+    private static void publishCounts() {
+        playCounts = counts;
+        countsVersion++;
+    }
 
-        playSet();
+    /** Records that a track started playing, off the calling thread */
+    static void recordPlay(int id) {
+        String path = paths.path(id);
+        countsThread.execute(() -> {
+            PlayStats s = stats.join();
+            s.played(path);
+            setCount(id, s.plays(path));
+            publishCounts();
+        });
     }
 
+    /** Records that a track was skipped, off the calling thread */
+    static void recordSkip(int id) {
+        String path = paths.path(id);
+        countsThread.execute(() -> stats.join().skipped(path));
+    }
+
+    // Playlist ids in order, for listing filter hits: kept up to date by
+    // appends, and rebuilt by the first search after any other edit
+    private static int[] order = new int[0];
+    private static int orderLen;
+    private static int orderAt = -1;
+
     /**
-     * Prepares the playlist and updates the UI.
+     * Returns the playlist tracks whose name or tags contain every word of
+     * the query, in playlist order. The hits come back as a set and are
+     * listed by walking the playlist once, so nothing is sorted. Call on
+     * the EDT.
      */
-    public void playSet() {
-        lf.clearList();
+    static int[] search(String query) {
+        BitSet set = search.search(query, queued, Player::searchText);
+        int count = set.cardinality();
+        if (count == 0) {
+            return new int[0];
+        }
+        long[] hits = set.toLongArray();
+        int[] ids = order();
+        int[] out = new int[count];
+        int n = 0;
+        for (int i = 0; i < orderLen && n < count; i++) {
+            // Every id is written and only kept if its bit counts it, so
+            // scattered hits cost no mispredicted branches
+            int id = ids[i];
+            out[n] = id;
+            if (id >>> 6 < hits.length) {
+                n += (int) (hits[id >>> 6] >>> id) & 1;
+            }
+        }
+        return out;
+    }
 
-        for (int i = 0; i < pList.size(); i++) {
-            player.addToPlayList(new File(path1 + "\\" + pList.get(i)));
-            lf.setList(pList.get(i));
+    /** The playlist ids in order, in the first orderLen slots; call on the EDT, do not modify */
+    private static int[] order() {
+        if (orderAt != edits) {
+            order = snapshotIds();
+            orderLen = order.length;
+            orderAt = edits;
         }
+        return order;
     }
 
-    /** Adds a file name to the playlist */
-    public void addList(String name) {
-        pList.add(name);
+    /** Position of a track in the playlist, or -1; linear, for single lookups */
+    static int indexOf(int id) {
+        return pList.indexOf(id);
     }
 
-    /** Gets a file name from the playlist by index */
-    public String getList(int index) {
+    // Names of recently shown rows, so repainting does not decode them again
+    private static final int[] nameCacheId = new int[1024];
+    private static final String[] nameCache = new String[1024];
+
+    static {
+        Arrays.fill(nameCacheId, -1);
+    }
+
+    /** Returns the name shown in the list for a track; call on the EDT */
+    static String displayName(int id) {
+        int slot = (id ^ (id >>> 10)) & (nameCache.length - 1);
+        if (nameCacheId[slot] != id) {
+            nameCache[slot] = paths.name(id);
+            nameCacheId[slot] = id;
+        }
+        return nameCache[slot];
+    }
+
+    /**
+     * Number of times a track was played; 0 until the statistics have
+     * loaded. Takes no lock, so it is safe to call while painting.
+     */
+    static int playCount(int id) {
+        int[] c = playCounts;
+        return id >= 0 && id < c.length ? c[id] : 0;
+    }
+
+    /** Changes whenever play counts change */
+    static int statsVersion() {
+        return countsVersion;
+    }
+
+    /** Copies the playlist ids in order; call on the EDT */
+    static int[] snapshotIds() {
+        return pList.toArray();
+    }
+
+    /** Paths of the whole playlist in order; call on the EDT */
+    static List<String> playlistPaths() {
+        List<String> list = new ArrayList<>(pList.size());
+        for (int id : pList.toArray()) {
+            list.add(paths.path(id));
+        }
+        return list;
+    }
+
+    /**
+     * Shows the library saved by the last session straight away, then checks
+     * it against the disk in the background: missing files are dropped,
+     * changed files lose their stale tags, and the library folders are
+     * walked again to pick up files added while the player was closed.
+     * Nothing is decoded here: the rows get ids whose paths and tags are
+     * read from the catalog as they are shown, until the validator has
+     * stored them. Call once, before anything else is added.
+     */
+    public void restoreLibrary() {
+        LibraryCatalog catalog;
+        try {
+            catalog = LibraryCatalog.open(LibraryCatalog.DEFAULT_FILE);
+        } catch (IOException ex) {
+            System.out.println("⚠️ Library catalog unreadable: " + ex.getMessage());
+            return;
+        }
+        if (catalog == null) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        int count = catalog.size();
+        int from = paths.reserve(count, catalog::path);
+        synchronized (Player.class) {
+            if (from + count > infos.length) {
+                infos = Arrays.copyOf(infos, Math.max(from + count, infos.length * 2));
+            }
+            restored = catalog;
+            restoredFrom = from;
+            unread.set(from, from + count);
+            albums = null;
+        }
+        for (int i = 0; i < catalog.rootCount(); i++) {
+            roots.add(catalog.root(i));
+        }
+        if (count > 0) {
+            appendRange(from, count);
+        }
+        System.out.println("📚 Restored " + count + " tracks in "
+                + (System.nanoTime() - start) / 1_000_000L + " ms");
+
+        Thread validator = new Thread(() -> validate(catalog), "library-validator");
+        validator.setDaemon(true);
+        validator.setPriority(Thread.MIN_PRIORITY);
+        validator.start();
+    }
+
+    /** Appends the consecutive ids of a restored catalog as one edit */
+    private static void appendRange(int from, int count) {
+        int[] ids = new int[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = from + i;
+        }
+        int at = pList.size();
+        pList.addAll(ids);
+        queued.set(from, from + count);
+        edits++;
+        // Paths are only built if a listener reads them
+        List<String> added = new AbstractList<String>() {
+            @Override
+            public String get(int i) {
+                return paths.path(from + i);
+            }
+
+            @Override
+            public int size() {
+                return count;
+            }
+        };
+        for (PlaylistListener l : listeners) {
+            l.tracksAppended(at, added);
+        }
+        int[] indexed = new int[count];
+        for (int i = 0; i < count; i++) {
+            indexed[i] = from + i;
+        }
+        indexLater(indexed);
+    }
+
+    /** Compares catalog entries with the files on disk; runs off the EDT */
+    private void validate(LibraryCatalog catalog) {
+        // Store the paths first, a slice at a time so the list can paint meanwhile
+        long start = System.nanoTime();
+        while (paths.resolve(4096)) {
+            Thread.yield();
+        }
+        System.out.println("📚 Stored " + catalog.size() + " paths in "
+                + (System.nanoTime() - start) / 1_000_000L + " ms, using "
+                + paths.footprintBytes() / Math.max(1, paths.size()) + " bytes/track");
+
+        List<String> missing = new ArrayList<>();
+        List<String> stale = new ArrayList<>();
+        for (int i = 0; i < catalog.size(); i++) {
+            String path = catalog.path(i);
+            try {
+                BasicFileAttributes attrs = Files.readAttributes(Paths.get(path), BasicFileAttributes.class);
+                long size = attrs.size();
+                long mtime = attrs.lastModifiedTime().toMillis();
+                int id = paths.find(path);
+                if (id < 0) {
+                    continue;
+                }
+                TrackInfo t = info(id);
+                if (t == null || !t.matches(size, mtime)) {
+                    // Changed since it was saved: the saved tags are stale
+                    t = new TrackInfo(size, mtime);
+                    setInfo(id, t);
+                }
+                if (!t.tagged) {
+                    stale.add(path);
+                }
+            } catch (IOException ex) {
+                missing.add(path);
+            }
+        }
+        synchronized (Player.class) {
+            // Whatever is still unread was removed meanwhile
+            unread.clear();
+            restored = null;
+        }
+
+        if (!stale.isEmpty()) {
+            tagger().submitAll(stale);
+        }
+        events.execute(() -> {
+            if (!missing.isEmpty()) {
+                applyChanges(Collections.emptyList(), missing,
+                        Collections.emptyList(), Collections.emptyList());
+            }
+            for (String root : new ArrayList<>(roots)) {
+                if (new File(root).isDirectory()) {
+                    scan(Paths.get(root));
+                }
+            }
+            analyzeLibrary();
+        });
+    }
+
+    /** Writes the catalog a few seconds after the last library change */
+    static void scheduleSave() {
+        if (saveTimer == null) {
+            saveTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "library-save-timer");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        if (saveDue != null) {
+            saveDue.cancel(false);
+        }
+        saveDue = saveTimer.schedule(() -> events.execute(Player::saveLibrary), 3, TimeUnit.SECONDS);
+    }
+
+    /** Writes a save still waiting on the timer at once, e.g. before exiting */
+    static void saveIfDue() {
+        if (saveDue != null && saveDue.cancel(false)) {
+            saveLibrary();
+        }
+    }
+
+    /** Snapshots the library on the EDT and writes the catalog in the background */
+    static void saveLibrary() {
+        int[] ids = snapshotIds();
+        int released = releases;
+        int save = ++savesTaken;
+        List<String> rootsCopy = new ArrayList<>(roots);
+        Thread writer = new Thread(() -> {
+            String[] trackPaths = new String[ids.length];
+            TrackInfo[] tags = new TrackInfo[ids.length];
+            if (!gather(ids, released, trackPaths, tags)) {
+                // A track was removed meanwhile; save what is there now
+                events.execute(Player::saveLibrary);
+                return;
+            }
+            BitSet stated = new BitSet();
+            for (int i = 0; i < ids.length; i++) {
+                if (tags[i] == null) {
+                    File f = new File(trackPaths[i]);
+                    tags[i] = new TrackInfo(f.length(), f.lastModified());
+                    stated.set(i);
+                }
+            }
+            synchronized (saveLock) {
+                if (save < savesWritten) {
+                    return;
+                }
+                try {
+                    LibraryCatalog.write(LibraryCatalog.DEFAULT_FILE, ids.length,
+                            i -> trackPaths[i], i -> tags[i], rootsCopy);
+                    savesWritten = save;
+                } catch (IOException ex) {
+                    System.out.println("⚠️ Could not save library catalog: " + ex.getMessage());
+                }
+            }
+            storeStated(ids, tags, stated, released);
+        }, "library-save");
+        writer.start();
+    }
+
+    /**
+     * Reads the paths and entries of a snapshot of playlist ids, off the
+     * EDT. Returns false if a track was removed meanwhile, as its id may
+     * already stand for another track; take a new snapshot then.
+     */
+    private static boolean gather(int[] ids, int released, String[] pathsOut, TrackInfo[] infosOut) {
+        try {
+            for (int i = 0; i < ids.length; i++) {
+                pathsOut[i] = paths.path(ids[i]);
+                infosOut[i] = info(ids[i]);
+            }
+        } catch (IllegalArgumentException removed) {
+            return false;
+        }
+        return releases == released;
+    }
+
+    /** Keeps the file sizes and times a save looked up, unless a track was removed since */
+    private static synchronized void storeStated(int[] ids, TrackInfo[] tags, BitSet stated, int released) {
+        if (releases != released) {
+            return;
+        }
+        for (int i = stated.nextSetBit(0); i >= 0; i = stated.nextSetBit(i + 1)) {
+            if (info(ids[i]) == null) {
+                storeInfo(ids[i], tags[i]);
+            }
+        }
+    }
+
+    /**
+     * Appends a batch of scanned files to the playlist, the player and the list,
+     * and queues the new ones for tagging. Must be called on the event dispatch thread.
+     * @param batch absolute file paths
+     */
+    void addBatch(List<String> batch) {
+        addBatch(batch, true);
+    }
+
+    private void addBatch(List<String> batch, boolean tag) {
+        List<String> untagged = new ArrayList<>();
+        List<String> appended = new ArrayList<>(batch.size());
+        int[] added = new int[batch.size()];
+        int from = pList.size();
+        for (String path : batch) {
+            int id = append(path);
+            if (id < 0) {
+                continue;
+            }
+            appended.add(path);
+            added[appended.size() - 1] = id;
+            if (tag) {
+                TrackInfo t = info(id);
+                if (t == null || !t.tagged) {
+                    untagged.add(path);
+                }
+            }
+        }
+        if (appended.isEmpty()) {
+            return;
+        }
+        // One event for the whole batch
+        for (PlaylistListener l : listeners) {
+            l.tracksAppended(from, appended);
+        }
+        indexLater(Arrays.copyOf(added, appended.size()));
+        if (!untagged.isEmpty() && tagger().offerAll(untagged) < untagged.size()) {
+            // The rest are tagged once the queue has drained
+            tagBehind = true;
+        }
+    }
+
+    /** Creates the background tagger on first use */
+    private static synchronized MetadataPipeline tagger() {
+        if (tagger == null) {
+            int threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+            tagger = new MetadataPipeline(threads, threads * 4, TAG_QUEUE, (path, t) -> {
+                int id = paths.find(path);
+                if (id >= 0) {
+                    setInfo(id, t);
+                }
+            });
+            tagger.setOnIdle(() -> events.execute(() -> {
+                if (tagBehind) {
+                    tagBehind = false;
+                    tagLibrary();
+                }
+                scheduleSave();
+                analyzeLibrary();
+            }));
+        }
+        return tagger;
+    }
+
+    /**
+     * Queues every track that has no tags yet, from a background thread
+     * that waits for room in the tagger's queue. Call on the EDT.
+     */
+    private static void tagLibrary() {
+        int[] ids = snapshotIds();
+        Thread feeder = new Thread(() -> {
+            List<String> one = new ArrayList<>(1);
+            for (int id : ids) {
+                TrackInfo t = info(id);
+                if (t == null || !t.tagged) {
+                    one.clear();
+                    try {
+                        one.add(paths.path(id));
+                    } catch (IllegalArgumentException removed) {
+                        continue;
+                    }
+                    tagger().submitAll(one);
+                }
+            }
+        }, "tag-backlog");
+        feeder.setDaemon(true);
+        feeder.start();
+    }
+
+    /**
+     * Queues the tagged tracks whose loudness is not known yet for analysis,
+     * unless an analysis is still running. Call on the EDT.
+     */
+    static void analyzeLibrary() {
+        if (analyzeFeeding || analyzer != null && analyzer.backlog() > 0) {
+            return;
+        }
+        analyzeFeeding = true;
+        int[] ids = snapshotIds();
+        Thread feeder = new Thread(() -> {
+            List<String> one = new ArrayList<>(1);
+            try {
+                for (int id : ids) {
+                    TrackInfo t = info(id);
+                    if (t != null && t.tagged && !t.analyzed) {
+                        one.clear();
+                        try {
+                            one.add(paths.path(id));
+                        } catch (IllegalArgumentException removed) {
+                            continue;
+                        }
+                        analyzer().submitAll(one);
+                    }
+                }
+            } finally {
+                analyzeFeeding = false;
+            }
+        }, "loudness-backlog");
+        feeder.setDaemon(true);
+        feeder.start();
+    }
+
+    /** Creates the loudness analyzer on first use */
+    private static synchronized LoudnessAnalyzer analyzer() {
+        if (analyzer == null) {
+            analyzer = new LoudnessAnalyzer(Runtime.getRuntime().availableProcessors(), LOUDNESS_QUEUE, (path, m) -> {
+                int id = paths.find(path);
+                if (id >= 0) {
+                    setLoudness(id, m);
+                }
+                // Save now and then, so a long analysis survives being closed
+                long done = analyzer.analyzedCount() + analyzer.failedCount();
+                if (done % 100 == 0) {
+                    events.execute(Player::saveLibrary);
+                }
+            });
+            analyzer.setOnIdle(() -> events.execute(Player::scheduleSave));
+        }
+        return analyzer;
+    }
+
+    /** Stores a track's measured loudness; a null meter marks it as not measurable */
+    private static synchronized void setLoudness(int id, LoudnessMeter m) {
+        TrackInfo t = info(id);
+        if (t == null) {
+            return;
+        }
+        if (albums != null && measured(t)) {
+            albums.remove(albumKey(t));
+        }
+        if (m != null && m.gatedBlocks() > 0) {
+            t.loudness = (float) m.integrated();
+            t.peak = (float) m.peak();
+            t.loudnessBlocks = m.gatedBlocks();
+        }
+        t.analyzed = true;
+        if (albums != null) {
+            addToAlbum(t);
+        }
+    }
+
+    /** Whether an entry counts toward its album's loudness */
+    private static boolean measured(TrackInfo t) {
+        return t != null && t.analyzed && !Float.isNaN(t.loudness) && !t.album.isEmpty();
+    }
+
+    private static String albumKey(TrackInfo t) {
+        return t.artist + '\0' + t.album;
+    }
+
+    /** Adds a track to its album's totals, if they are kept; call holding the class lock */
+    private static void addToAlbum(TrackInfo t) {
+        if (measured(t)) {
+            double[] a = albums.get(albumKey(t));
+            if (a != null) {
+                a[0] += t.loudnessBlocks * LoudnessMeter.energyOf(t.loudness);
+                a[1] += t.loudnessBlocks;
+                a[2] = Math.max(a[2], t.peak);
+            }
+        }
+    }
+
+    /**
+     * Totals of a track's album. The first call adds up the whole library
+     * at once, later ones only an album that was dropped since.
+     */
+    private static synchronized double[] albumOf(TrackInfo t) {
+        String key = albumKey(t);
+        boolean all = albums == null;
+        if (all) {
+            albums = new HashMap<>();
+        } else if (albums.containsKey(key)) {
+            return albums.get(key);
+        }
+        albums.put(key, new double[3]);
+        for (int id = 0; id < infos.length; id++) {
+            TrackInfo o = info(id);
+            if (measured(o)) {
+                String k = albumKey(o);
+                if (all) {
+                    albums.computeIfAbsent(k, x -> new double[3]);
+                }
+                if (all || k.equals(key)) {
+                    addToAlbum(o);
+                }
+            }
+        }
+        return albums.get(key);
+    }
+
+    /**
+     * Gain that brings a track to the reference loudness, or its whole
+     * album in album mode, without lifting its peak past full scale.
+     * An album's loudness is the block weighted energy mean of its tracks.
+     */
+    static float levelOf(int id) {
+        TrackInfo t = info(id);
+        if (leveling == LEVEL_OFF || t == null || !t.analyzed || Float.isNaN(t.loudness)) {
+            return 1f;
+        }
+        double loudness = t.loudness;
+        float peak = t.peak;
+        if (leveling == LEVEL_ALBUM && !t.album.isEmpty()) {
+            double energy;
+            double blocks;
+            synchronized (Player.class) {
+                double[] a = albumOf(t);
+                energy = a[0];
+                blocks = a[1];
+                peak = Math.max(peak, (float) a[2]);
+            }
+            if (blocks > 0) {
+                loudness = LoudnessMeter.loudnessOf(energy / blocks);
+            }
+        }
+        float gain = (float) Math.pow(10, (REFERENCE_LUFS - loudness) / 20);
+        return Math.min(gain, HEADROOM / Math.max(peak, 1e-3f));
+    }
+
+    /** Sets the loudness leveling mode, one of the LEVEL_ constants */
+    public static void setLeveling(int mode) {
+        leveling = mode;
+        zone.relevel();
+    }
+
+    /** Returns the name shown in the list for a playlist path */
+    static String displayName(String path) {
+        return new File(path).getName();
+    }
+
+    /** Number of tracks in the playlist */
+    static int trackCount() {
+        return pList.size();
+    }
+
+    /** Id of the track at a playlist position; O(log n) */
+    static int idAt(int index) {
         return pList.get(index);
     }
 
-    /** Removes an item from the playlist by index */
-    public void removeList(int index) {
-        pList.remove(index);
+    /**
+     * Adds a file path to the playlist unless it is already there.
+     * @return true if the path was added
+     */
+    public boolean addList(String name) {
+        int id = append(name);
+        if (id < 0) {
+            return false;
+        }
+        indexLater(new int[] { id });
+        return true;
+    }
+
+    /** Appends a track without telling the listeners; returns its id, or -1 if already queued */
+    private static int append(String path) {
+        int id = paths.intern(path);
+        if (queued.get(id)) {
+            return -1;
+        }
+        queued.set(id);
+        pList.add(id);
+        if (orderAt == edits++) {
+            if (orderLen == order.length) {
+                order = Arrays.copyOf(order, Math.max(16, orderLen * 2));
+            }
+            order[orderLen++] = id;
+            orderAt = edits;
+        }
+        return id;
     }
 
     /**
-     * Moves a song within the playlist to a new position.
-     * @param index current position
-     * @param number new position (1-based)
+     * Inserts a track and applies the same edit to the player queue and the
+     * list, without touching the track that is playing.
+     * @return false if the track is already in the playlist
      */
-    public void setAt(int index, int number) {
-        String temp = getList(index);
+    public boolean insert(int index, String path) {
+        int id = add(index, path);
+        if (id >= 0) {
+            indexLater(new int[] { id });
+        }
+        return id >= 0;
+    }
+
+    /** Inserts a track and passes the edit on; returns its id, or -1 if already queued */
+    private int add(int index, String path) {
+        int id = paths.intern(path);
+        if (queued.get(id)) {
+            return -1;
+        }
+        queued.set(id);
+        pList.add(index, id);
+        edits++;
+        for (PlaylistListener l : listeners) {
+            l.trackInserted(index, path);
+        }
+        return id;
+    }
+
+    /** Removes one track from the playlist, the player queue and the list */
+    public void removeAt(int index) {
         removeList(index);
+        for (PlaylistListener l : listeners) {
+            l.trackRemoved(index);
+        }
+    }
 
-        String temp3;
-        String temp2 = getList(number - 1);
-        pList.set(number - 1, temp);
+    /** Moves one track in the playlist, the player queue and the list */
+    public void move(int from, int to) {
+        pList.move(from, to);
+        edits++;
+        for (PlaylistListener l : listeners) {
+            l.trackMoved(from, to);
+        }
+    }
 
-        for (int i = number; i < pList.size(); i++) {
-            temp3 = getList(i);
-            pList.set(i, temp2);
-            temp2 = temp3;
+    /** Registers a view that mirrors playlist edits; registering twice has no effect */
+    public static void addPlaylistListener(PlaylistListener l) {
+        if (!listeners.contains(l)) {
+            listeners.add(l);
         }
+    }
 
-        // Code updated for Hacktoberfest contribution
-        reload();
+    /**
+     * Runs library and engine updates on the given executor instead of the
+     * EDT, one at a time. For running without a GUI; call before anything
+     * else touches the player.
+     */
+    public static void runEventsOn(Executor executor) {
+        events = executor;
+    }
+
+    /** Gets a file path from the playlist by index */
+    public String getList(int index) {
+        return paths.path(pList.get(index));
+    }
+
+    /** Removes an item from the playlist by index */
+    public void removeList(int index) {
+        int id = pList.remove(index);
+        edits++;
+        synchronized (Player.class) {
+            releases++;
+        }
+        queued.clear(id);
+        setInfo(id, null);
+        paths.release(id);
+        forget(id);
     }
 
     /**
-     * Reloads and refreshes the player.
+     * Drops what is kept by a released path id, before the id is reused.
+     * Called after the release, so a search purge running meanwhile finds
+     * the id gone rather than indexing the removed track's words again.
      */
-    public void reload() {
-        PlayerGUI pg = new PlayerGUI();
-        stop();
+    private static void forget(int id) {
+        int slot = (id ^ (id >>> 10)) & (nameCache.length - 1);
+        if (nameCacheId[slot] == id) {
+            nameCacheId[slot] = -1;
+        }
+        search.forget(id);
+        purgeIfStale();
+        countsThread.execute(() -> {
+            setCount(id, 0);
+            publishCounts();
+        });
+    }
 
-        if (player.isPaused()) {
-            pg.pauseSet();
+    /**
+     * Sorts the playlist on a worker thread and applies the new order in one
+     * step. A sort that finishes after the playlist was edited is dropped.
+     * @param label "Sort By" choice: Name, Fav, Title, Artist, Album or Duration
+     */
+    public void sortBy(String label) {
+        PlaylistSorter.Field field;
+        try {
+            field = PlaylistSorter.Field.of(label);
+        } catch (IllegalArgumentException ex) {
+            System.out.println("⚠️ Unknown sort field: " + label);
+            return;
         }
+        int[] ids = snapshotIds();
+        int version = edits;
+        long start = System.nanoTime();
 
-        MP3Player tempp = new MP3Player();
-        player = tempp;
-        playSet();
-        pg.playSet();
-        player.play();
+        new SwingWorker<int[], Void>() {
+            @Override
+            protected int[] doInBackground() {
+                return PlaylistSorter.sort(ids, field);
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    int[] sorted = get();
+                    if (version != edits) {
+                        System.out.println("⚠️ Playlist changed while sorting, sort again");
+                        return;
+                    }
+                    reorder(sorted);
+                    System.out.println("🔀 Sorted " + sorted.length + " tracks by " + label + " in "
+                            + (System.nanoTime() - start) / 1_000_000L + " ms");
+                } catch (InterruptedException | ExecutionException ex) {
+                    System.out.println("⚠️ Sort failed: " + ex.getMessage());
+                }
+            }
+        }.execute();
     }
 
-    /** Deletes current track (reloads player state) */
-    public void delete() {
-        reload();
+    /** Replaces the playlist order with the given ids in one edit */
+    void reorder(int[] ids) {
+        pList.replaceAll(ids);
+        edits++;
+        for (PlaylistListener l : listeners) {
+            l.playlistReordered();
+        }
+        scheduleSave();
+    }
+
+    /**
+     * Moves a song within the playlist to a new position.
+     * @param index current position
+     * @param number new position (1-based)
+     */
+    public void setAt(int index, int number) {
+        int to = Math.max(0, Math.min(number - 1, pList.size() - 1));
+        move(index, to);
     }
 
     /** Skips to next song in playlist */
     public void next() {
-        player.skipForward();
+        zone.next();
+    }
+
+    /** Plays the track at a playlist position */
+    public void playAt(int index) {
+        zone.playAt(index);
+    }
+
+    /** Playlist position of the playing track, or -1 */
+    static int currentIndex() {
+        return zone.currentIndex();
     }
 
     /** Skips to previous song in playlist */
     public void prev() {
-        player.skipBackward();
+        zone.prev();
     }
 
-    /** Starts playing the loaded playlist */
+    /** Starts playing the loaded playlist, or resumes it if paused */
     public void play() {
         System.out.println("▶️ Play clicked");
-        player.play();
+        zone.play();
+    }
+
+    /** Play statistics; waits until they have loaded, so not for the EDT */
+    static PlayStats stats() {
+        return stats.join();
+    }
+
+    /** Sets the volume from a slider position, 0 to 100 */
+    public static void setVolume(int percent) {
+        zone.setVolume(percent);
+    }
+
+    /** Volume as a slider position, 0 to 100 */
+    public static int volume() {
+        return zone.volume();
+    }
+
+    /** Mutes or unmutes without losing the volume setting */
+    public static void setMuted(boolean m) {
+        zone.setMuted(m);
+    }
+
+    /**
+     * Sets how long skipping to another track crossfades, 0 to cut.
+     * @param trackEnds whether tracks ending on their own crossfade too
+     */
+    public static void setCrossfade(int ms, boolean trackEnds) {
+        zone.setCrossfade(ms, trackEnds);
+    }
+
+    /** Jumps to a point in the playing track */
+    public static void seek(int ms) {
+        zone.seek(ms);
+    }
+
+    /**
+     * Sets the view that shows the playing position. It is given the
+     * position and the track length in ms (0 if not known yet), on the EDT,
+     * at most every tenth of a second while playing.
+     */
+    public static void setPositionView(BiConsumer<Integer, Integer> view) {
+        zone.setPositionView(view);
+    }
+
+    /** Sets the view that is told the path of each track that starts, on the EDT */
+    public static void setTrackView(Consumer<String> view) {
+        zone.setTrackView(view);
     }
 
     /** Sets repeat mode for the player */
     public void setRep(boolean x) {
-        player.setRepeat(x);
+        zone.setRepeat(x);
     }
 
     /** Pauses current playback */
     public void pause() {
-        player.pause();
+        zone.pause();
     }
 
     /** Stops current playback */
     public void stop() {
-        player.stop();
+        zone.stop();
     }
 }
@@ -0,0 +1,337 @@
+/**
+ * PlayerDaemon.java
+ * -------------------------------------
+ * Runs the player without a window, for kiosks and servers: only the
+ * library and the playback engine are started, and nothing loads AWT or
+ * Swing. The player is controlled through a local socket, one text
+ * command per line, each answered by one line starting with "ok" or
+ * "error".
+ *
+ * The socket is a Unix domain socket at ~/.project-player/control.sock
+ * (or the path after --socket). A single selector thread serves every
+ * client; commands run in order on the player's event thread, so they
+ * never race the library or the engine, and a round trip takes tens of
+ * microseconds (bench/PlayerDaemonBench measures it).
+ *
+ * Commands:
+ * <pre>
+ *   play [n]         play, resume, or play the n-th track (from 1)
+ *   pause, stop, next, prev
+ *   seek ms          jump in the playing track
+ *   volume 0-100     mute on|off     repeat on|off
+ *   add folder       import file     export file
+ *   cancel           stops the folder scans still running
+ *   status           position, track and playlist size
+ *   ping             answers "ok pong" from the event thread
+ *   quit             stops the daemon
+ * </pre>
+ */
+
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class PlayerDaemon {
+
+    /** Default control socket */
+    static final Path SOCKET = Paths.get(System.getProperty("user.home"), ".project-player", "control.sock");
+
+    private static final int LINE_MAX = 4096;
+
+    private final Player player = new Player();
+    private final ExecutorService events;
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    // Answers from the event thread waiting to be written by the selector thread
+    private final ConcurrentLinkedQueue<Reply> replies = new ConcurrentLinkedQueue<>();
+    private volatile boolean running = true;
+
+    // Event thread only: what the engine last reported
+    private String track = "";
+    private int positionMs;
+    private int lengthMs;
+
+    /** One client's partial input and pending output */
+    private static final class Client {
+        final ByteBuffer in = ByteBuffer.allocate(LINE_MAX);
+        ByteBuffer out = ByteBuffer.allocate(0);
+    }
+
+    private static final class Reply {
+        final SelectionKey key;
+        final String text;
+
+        Reply(SelectionKey key, String text) {
+            this.key = key;
+            this.text = text;
+        }
+    }
+
+    public PlayerDaemon(Path socket, ExecutorService events) throws IOException {
+        this.events = events;
+        Files.createDirectories(socket.toAbsolutePath().getParent());
+        if (Files.exists(socket)) {
+            if (answers(socket)) {
+                throw new IOException("Another player is already listening on " + socket);
+            }
+            // Left by a daemon that did not shut down cleanly
+            Files.deleteIfExists(socket);
+        }
+        selector = Selector.open();
+        server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        server.bind(UnixDomainSocketAddress.of(socket));
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+
+        Player.setTrackView(path -> track = path);
+        Player.setPositionView((ms, length) -> {
+            positionMs = ms;
+            lengthMs = length;
+        });
+    }
+
+    /** True if something accepts connections on the socket */
+    private static boolean answers(Path socket) {
+        try (SocketChannel ch = SocketChannel.open(UnixDomainSocketAddress.of(socket))) {
+            return ch.isConnected();
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path socket = SOCKET;
+        for (int i = 0; i + 1 < args.length; i++) {
+            if (args[i].equals("--socket")) {
+                socket = Paths.get(args[i + 1]);
+            }
+        }
+        System.setProperty("java.awt.headless", "true");
+
+        ExecutorService events = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "player-events");
+            t.setDaemon(true);
+            return t;
+        });
+        Player.runEventsOn(events);
+        PlayerDaemon d;
+        try {
+            d = new PlayerDaemon(socket, events);
+        } catch (IOException ex) {
+            System.out.println("⚠️ Cannot start: " + ex.getMessage());
+            return;
+        }
+        events.execute(d.player::restoreLibrary);
+        System.out.println("🎧 Listening on " + socket);
+        d.serve();
+        Files.deleteIfExists(socket);
+    }
+
+    /** Serves clients until "quit" */
+    void serve() throws IOException {
+        while (running) {
+            selector.select();
+            Reply r;
+            while ((r = replies.poll()) != null) {
+                send(r.key, r.text);
+            }
+            Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+            while (it.hasNext()) {
+                SelectionKey key = it.next();
+                it.remove();
+                try {
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        SocketChannel c = server.accept();
+                        if (c != null) {
+                            c.configureBlocking(false);
+                            c.register(selector, SelectionKey.OP_READ, new Client());
+                        }
+                    }
+                    if (key.isValid() && key.isReadable()) {
+                        read(key);
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        flush(key);
+                    }
+                } catch (IOException ex) {
+                    key.cancel();
+                    key.channel().close();
+                }
+            }
+        }
+        // Let commands already handed over finish, and answer them
+        events.shutdown();
+        try {
+            events.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        Reply r;
+        while ((r = replies.poll()) != null) {
+            send(r.key, r.text);
+        }
+        for (SelectionKey key : selector.keys()) {
+            key.channel().close();
+        }
+        selector.close();
+    }
+
+    /** Reads what arrived and hands each complete line to the event thread */
+    private void read(SelectionKey key) throws IOException {
+        Client c = (Client) key.attachment();
+        SocketChannel ch = (SocketChannel) key.channel();
+        if (ch.read(c.in) < 0) {
+            key.cancel();
+            ch.close();
+            return;
+        }
+        c.in.flip();
+        int start = 0;
+        for (int i = 0; i < c.in.limit(); i++) {
+            if (c.in.get(i) == '\n') {
+                byte[] line = new byte[i - start];
+                c.in.get(start, line);
+                String cmd = new String(line, StandardCharsets.UTF_8).trim();
+                events.execute(() -> {
+                    replies.add(new Reply(key, handle(cmd)));
+                    selector.wakeup();
+                });
+                start = i + 1;
+            }
+        }
+        c.in.position(start);
+        c.in.compact();
+        if (!c.in.hasRemaining()) {
+            send(key, "error line too long");
+            c.in.clear();
+        }
+    }
+
+    private void send(SelectionKey key, String text) {
+        if (!key.isValid()) {
+            return;
+        }
+        Client c = (Client) key.attachment();
+        byte[] bytes = (text + "\n").getBytes(StandardCharsets.UTF_8);
+        ByteBuffer out = ByteBuffer.allocate(c.out.remaining() + bytes.length);
+        out.put(c.out).put(bytes).flip();
+        c.out = out;
+        try {
+            flush(key);
+        } catch (IOException ex) {
+            key.cancel();
+            try {
+                key.channel().close();
+            } catch (IOException closing) {
+                // gone either way
+            }
+        }
+    }
+
+    /** Writes pending output, asking to be told when the rest can go */
+    private void flush(SelectionKey key) throws IOException {
+        Client c = (Client) key.attachment();
+        ((SocketChannel) key.channel()).write(c.out);
+        key.interestOps(c.out.hasRemaining()
+                ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+    }
+
+    /** Carries out one command on the event thread and returns the answer */
+    String handle(String line) {
+        String[] w = line.split("\\s+", 2);
+        String arg = w.length > 1 ? w[1].trim() : "";
+        try {
+            switch (w[0].toLowerCase()) {
+                case "ping":
+                    return "ok pong";
+                case "play":
+                    if (arg.isEmpty()) {
+                        player.play();
+                    } else {
+                        player.playAt(Integer.parseInt(arg) - 1);
+                    }
+                    return "ok";
+                case "pause":
+                    player.pause();
+                    return "ok";
+                case "stop":
+                    player.stop();
+                    return "ok";
+                case "next":
+                    player.next();
+                    return "ok";
+                case "prev":
+                    player.prev();
+                    return "ok";
+                case "seek":
+                    Player.seek(Integer.parseInt(arg));
+                    return "ok";
+                case "volume":
+                    Player.setVolume(Math.max(0, Math.min(100, Integer.parseInt(arg))));
+                    return "ok";
+                case "mute":
+                    Player.setMuted(on(arg));
+                    return "ok";
+                case "repeat":
+                    player.setRep(on(arg));
+                    return "ok";
+                case "add":
+                    player.retrive(arg);
+                    return "ok";
+                case "cancel":
+                    Player.cancelScan();
+                    return "ok";
+                case "import":
+                    player.importPlaylist(arg);
+                    return "ok";
+                case "export":
+                    player.exportPlaylist(arg);
+                    return "ok";
+                case "status":
+                    return status();
+                case "quit":
+                    player.stop();
+                    Player.saveIfDue();
+                    running = false;
+                    return "ok bye";
+                default:
+                    return "error unknown command: " + w[0];
+            }
+        } catch (NumberFormatException ex) {
+            return "error not a number: " + arg;
+        } catch (RuntimeException ex) {
+            return "error " + ex;
+        }
+    }
+
+    private static boolean on(String arg) {
+        if (!arg.equals("on") && !arg.equals("off")) {
+            throw new IllegalArgumentException("expected on or off");
+        }
+        return arg.equals("on");
+    }
+
+    private String status() {
+        String state = Player.player.isStopped() ? "stopped" : Player.player.isPaused() ? "paused" : "playing";
+        return "ok " + state + " " + positionMs + "/" + lengthMs + " ms, track "
+                + (Player.currentIndex() + 1) + " of " + Player.trackCount()
+                + (track.isEmpty() ? "" : ": " + track);
+    }
+}
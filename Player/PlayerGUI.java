@@ -27,11 +27,65 @@ public class PlayerGUI extends javax.swing.JFrame  {
         initComponents();
         setIcons();
        ccP.setVisible(false);
+       // The list mirrors the playlist from here on
+       Player.addPlaylistListener(ListFrame.modelSync);
+       ListFrame.model.reload();
+       // The slider shows the volume the engine plays at
+       volumeS.setValue(Player.volume());
       // 🔹 Hacktoberfest addition: add a small Help -> About menu
         addAboutMenu();
+        addPlaylistMenu();
         
            }
 
+    // True while the slider is moved to follow playback, not by the user
+    private boolean following;
+    // Track whose waveform the slider shows or waits for
+    private String shownTrack;
+
+    /**
+     * Makes the progress slider follow the playing track, and seek when the
+     * user drags or clicks it, with the track's waveform drawn behind it.
+     * The CC panel follows along with the track's lyrics, if it has any.
+     * Call once, for the visible window.
+     */
+    public void followPlayback() {
+        musicS.setMinimum(0);
+        musicS.setValue(0);
+        WaveformSliderUI wave = new WaveformSliderUI(musicS);
+        musicS.setUI(wave);
+        CaptionView captions = new CaptionView(jTextArea1);
+        Player.setTrackView(path -> {
+            captions.trackStarted(path);
+            WaveformPeaks peaks = WaveformPeaks.cached(path);
+            wave.setPeaks(peaks);
+            if (peaks == null) {
+                WaveformPeaks.load(path, p -> javax.swing.SwingUtilities.invokeLater(() -> {
+                    if (path.equals(shownTrack)) {
+                        wave.setPeaks(p);
+                    }
+                }));
+            }
+            shownTrack = path;
+        });
+        Player.setPositionView((ms, length) -> {
+            captions.position(ms);
+            if (musicS.getValueIsAdjusting()) {
+                return; // the user is dragging
+            }
+            following = true;
+            musicS.setEnabled(length > 0);
+            musicS.setMaximum(Math.max(1, length));
+            musicS.setValue(Math.min(ms, Math.max(1, length)));
+            following = false;
+        });
+        musicS.addChangeListener(e -> {
+            if (!following && !musicS.getValueIsAdjusting()) {
+                Player.seek(musicS.getValue());
+            }
+        });
+    }
+
            /** Adds a simple "Help -> About" menu item */
     private void addAboutMenu() {
         javax.swing.JMenuBar menuBar = new javax.swing.JMenuBar();
@@ -44,7 +98,69 @@ public class PlayerGUI extends javax.swing.JFrame  {
         setJMenuBar(menuBar);
     }
 
-    
+    /** Adds a "Playlist" menu to import and export playlist files */
+    private void addPlaylistMenu() {
+        javax.swing.JMenu playlistMenu = new javax.swing.JMenu("Playlist");
+        javax.swing.JMenuItem importItem = new javax.swing.JMenuItem("Import...");
+        javax.swing.JMenuItem exportItem = new javax.swing.JMenuItem("Export...");
+        javax.swing.filechooser.FileNameExtensionFilter filter =
+                new javax.swing.filechooser.FileNameExtensionFilter("Playlists (m3u, m3u8, pls)", "m3u", "m3u8", "pls");
+
+        importItem.addActionListener(e -> {
+            JFileChooser f = new JFileChooser();
+            f.setFileFilter(filter);
+            if (f.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
+                new Player().importPlaylist(f.getSelectedFile().toString());
+            }
+        });
+        exportItem.addActionListener(e -> {
+            JFileChooser f = new JFileChooser();
+            f.setFileFilter(filter);
+            if (f.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
+                String file = f.getSelectedFile().toString();
+                if (!PlaylistIO.isPlaylist(file)) {
+                    file += ".m3u8";
+                }
+                new Player().exportPlaylist(file);
+            }
+        });
+        // While folders are scanned the load button cancels the scan, as does this
+        javax.swing.JMenuItem cancelItem = new javax.swing.JMenuItem("Cancel scan");
+        cancelItem.setEnabled(false);
+        cancelItem.addActionListener(e -> Player.cancelScan());
+        loadFileB.setToolTipText("Load folder");
+        Player.setScanView(scanning -> {
+            cancelItem.setEnabled(scanning);
+            loadFileB.setToolTipText(scanning ? "Cancel scan" : "Load folder");
+        });
+        javax.swing.JCheckBoxMenuItem fadeItem = new javax.swing.JCheckBoxMenuItem("Crossfade between tracks");
+        fadeItem.addActionListener(e -> Player.setCrossfade(1000, fadeItem.isSelected()));
+        playlistMenu.add(importItem);
+        playlistMenu.add(exportItem);
+        playlistMenu.add(cancelItem);
+        playlistMenu.addSeparator();
+        playlistMenu.add(fadeItem);
+        playlistMenu.add(levelingMenu());
+        getJMenuBar().add(playlistMenu, 0);
+    }
+
+    /** Submenu choosing how track loudness is evened out */
+    private javax.swing.JMenu levelingMenu() {
+        javax.swing.JMenu menu = new javax.swing.JMenu("Level loudness");
+        javax.swing.ButtonGroup group = new javax.swing.ButtonGroup();
+        String[] names = {"Off", "By track", "By album"};
+        int[] modes = {Player.LEVEL_OFF, Player.LEVEL_TRACK, Player.LEVEL_ALBUM};
+        for (int i = 0; i < names.length; i++) {
+            int mode = modes[i];
+            javax.swing.JRadioButtonMenuItem item = new javax.swing.JRadioButtonMenuItem(names[i]);
+            item.setSelected(mode == Player.LEVEL_TRACK);
+            item.addActionListener(e -> Player.setLeveling(mode));
+            group.add(item);
+            menu.add(item);
+        }
+        return menu;
+    }
+
        private void setIcons() {
 
         prevB.setContentAreaFilled(false);
@@ -282,16 +398,20 @@ public class PlayerGUI extends javax.swing.JFrame  {
     }//GEN-LAST:event_ccBActionPerformed
 
     private void volumeBActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_volumeBActionPerformed
-        // TODO add your handling code here:
+        // Mute keeps the slider where it is, so unmuting returns to the same level
         if(vol==1)
         {
-            volumeS.setValue(0);
+            Player.setMuted(true);
             volumeB.setIcon(new javax.swing.ImageIcon("F:\\Final Project\\Player.image\\muted.png"));
         vol=0;
         }
         else if (vol==0)
         {
-            volumeS.setValue(100);
+            if(volumeS.getValue()==0)
+            {
+                volumeS.setValue(100);
+            }
+            Player.setMuted(false);
         volumeB.setIcon(new javax.swing.ImageIcon("‪‪F:\\Final Project\\Player.image\\Vol.png"));
         vol=1;
         }
@@ -312,6 +432,7 @@ public class PlayerGUI extends javax.swing.JFrame  {
     }//GEN-LAST:event_listBActionPerformed
 
     private void volumeSStateChanged(javax.swing.event.ChangeEvent evt) {//GEN-FIRST:event_volumeSStateChanged
+            Player.setVolume(volumeS.getValue());
             if(volumeS.getValue()==0)
     {        // TODO add your handling code here:
         volumeB.setIcon(new javax.swing.ImageIcon("F:\\Final Project\\Player.image\\muted.png"));
@@ -321,13 +442,17 @@ public class PlayerGUI extends javax.swing.JFrame  {
     {
     volumeB.setIcon(new javax.swing.ImageIcon("‪F:\\Final Project\\Player.image\\Vol.png"));
         vol=1;
+        Player.setMuted(false);
     
     }
         // TODO add your handling code here:
     }//GEN-LAST:event_volumeSStateChanged
 
     private void loadFileBActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_loadFileBActionPerformed
-
+        if (Player.isScanning()) {
+            Player.cancelScan();
+            return;
+        }
         
         
    JFileChooser f = new JFileChooser();
@@ -450,7 +575,9 @@ public class PlayerGUI extends javax.swing.JFrame  {
         /* Create and display the form */
         java.awt.EventQueue.invokeLater(new Runnable() {
             public void run() {
-                new PlayerGUI().setVisible(true);
+                PlayerGUI gui = new PlayerGUI();
+                gui.followPlayback();
+                gui.setVisible(true);
             }
         });
     }
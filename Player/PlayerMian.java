@@ -18,11 +18,19 @@ public class PlayerMian {
     /**
      * @param args the command line arguments
      */
-    public static void main(String[] args) {
+    public static void main(String[] args) throws java.io.IOException {
+       if (args.length > 0 && args[0].equals("--headless")) {
+           // No window: playback controlled through PlayerDaemon's socket
+           PlayerDaemon.main(java.util.Arrays.copyOfRange(args, 1, args.length));
+           return;
+       }
        PlayerGUI p =new PlayerGUI();
+       p.followPlayback();
          p.setLocationRelativeTo(null);
        p.setVisible(true);
        Player pp=new Player();
+       // Show last session's library right away
+       javax.swing.SwingUtilities.invokeLater(pp::restoreLibrary);
      
     }
     
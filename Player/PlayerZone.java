@@ -0,0 +1,383 @@
+/**
+ * PlayerZone.java
+ * -------------------------------------
+ * One independent player: a queue of tracks, a play cursor, and a
+ * {@link PlaybackEngine} with its own decoders and its own output. A JVM
+ * can run as many zones as it has outputs, e.g. one per room. They share
+ * the library (paths, tags, loudness, play counts), which is read-mostly,
+ * and on the audio path only the buffer pool and the decoded audio cache,
+ * which are touched once per track rather than once per chunk.
+ *
+ * The GUI and the daemon play the library playlist through one zone,
+ * {@link Player#zone}, whose queue is that playlist. Other zones own
+ * their queue and fill it with {@link #enqueue}.
+ *
+ * A zone's state is touched only on its event executor: engine reports
+ * are passed there, and its methods must be called there. Zones can
+ * share an executor or have one each.
+ */
+
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+public class PlayerZone {
+
+    private final String name;
+    // Track ids in play order
+    private final IndexedList queue;
+    private final Executor events;
+    private final PlaybackEngine engine;
+    private final PlaylistListener sync = new QueueSync();
+
+    // Whether playback wraps to the top after the last track
+    private boolean repeat;
+    // Tracks in a row that failed to play; playback stops after a few
+    private int failures;
+    // Volume slider position, 0 to 100
+    private int volume = 100;
+    // Whether plays and skips go into the library's play statistics
+    private boolean countPlays = true;
+    // Shows the playing position and length in ms, on the event executor
+    private volatile BiConsumer<Integer, Integer> positionView;
+    // Told the path of each track that starts playing, on the event executor
+    private volatile Consumer<String> trackView;
+    // Queue index and id of the track playing, and when it started
+    private int current = -1;
+    private int currentId = -1;
+    private long startedAt;
+
+    /** A zone with an empty queue, playing to the default sound card */
+    public PlayerZone(String name, Executor events) {
+        this(name, new IndexedList(), events, new AudioOutput());
+    }
+
+    /**
+     * A zone playing a queue kept by someone else, who must pass every
+     * edit of it on to {@link #queueSync}.
+     */
+    PlayerZone(String name, IndexedList queue, Executor events, AudioOutput output) {
+        this.name = name;
+        this.queue = queue;
+        this.events = events;
+        this.engine = new PlaybackEngine(new EngineEvents(), output);
+    }
+
+    public String name() {
+        return name;
+    }
+
+    /** The zone's engine, for its state and its output counters */
+    public PlaybackEngine engine() {
+        return engine;
+    }
+
+    /** Keeps the cursor and the preloaded track in step with edits of a shared queue */
+    PlaylistListener queueSync() {
+        return sync;
+    }
+
+    /** Number of tracks in the queue */
+    public int size() {
+        return queue.size();
+    }
+
+    /** Appends a track to the queue of a zone that owns its queue */
+    public void enqueue(String path) {
+        int id = Player.paths.intern(path);
+        queue.add(id);
+        sync.tracksAppended(queue.size() - 1, null);
+    }
+
+    /** Empties the queue of a zone that owns its queue; playback stops */
+    public void clear() {
+        stop();
+        queue.clear();
+        current = -1;
+        currentId = -1;
+    }
+
+    /** Whether plays and skips are counted in the library's statistics; on by default */
+    public void setCountingPlays(boolean on) {
+        countPlays = on;
+    }
+
+    /** Starts playing the queue, or resumes it if paused */
+    public void play() {
+        if (engine.isPaused()) {
+            engine.resume();
+            return;
+        }
+        failures = 0;
+        startTrack(Math.max(current, 0));
+    }
+
+    /** Plays the track at a queue position */
+    public void playAt(int index) {
+        endCurrent();
+        failures = 0;
+        startTrack(index);
+    }
+
+    public void next() {
+        endCurrent();
+        startTrack(nextIndex());
+    }
+
+    public void prev() {
+        endCurrent();
+        startTrack(current - 1);
+    }
+
+    public void pause() {
+        engine.pause();
+    }
+
+    public void stop() {
+        engine.stop();
+    }
+
+    /** Stops playback for good and ends the zone's audio thread; safe from any thread */
+    public void close() {
+        engine.close();
+    }
+
+    /** Queue position of the playing track, or -1 */
+    public int currentIndex() {
+        return currentId >= 0 ? current : -1;
+    }
+
+    public void setRepeat(boolean on) {
+        repeat = on;
+        preloadNext();
+    }
+
+    /** Sets the volume from a slider position, 0 to 100 */
+    public void setVolume(int percent) {
+        volume = percent;
+        engine.setGain(GainStage.gainFor(percent));
+    }
+
+    /** Volume as a slider position, 0 to 100 */
+    public int volume() {
+        return volume;
+    }
+
+    /** Mutes or unmutes without losing the volume setting */
+    public void setMuted(boolean m) {
+        engine.setMuted(m);
+    }
+
+    /**
+     * Sets how long skipping to another track crossfades, 0 to cut.
+     * @param trackEnds whether tracks ending on their own crossfade too
+     */
+    public void setCrossfade(int ms, boolean trackEnds) {
+        engine.setCrossfade(ms);
+        engine.setCrossfadeTrackEnds(trackEnds);
+    }
+
+    /** Jumps to a point in the playing track */
+    public void seek(int ms) {
+        engine.seek(ms);
+    }
+
+    /**
+     * Sets the view that shows the playing position. It is given the
+     * position and the track length in ms (0 if not known yet), on the
+     * event executor, at most every tenth of a second while playing.
+     */
+    public void setPositionView(BiConsumer<Integer, Integer> view) {
+        positionView = view;
+    }
+
+    /** Sets the view that is told the path of each track that starts, on the event executor */
+    public void setTrackView(Consumer<String> view) {
+        trackView = view;
+    }
+
+    /** Applies a changed loudness leveling mode to the playing and the next track */
+    void relevel() {
+        if (currentId >= 0) {
+            engine.setLevel(Player.levelOf(currentId));
+        }
+        preloadNext();
+    }
+
+    /** Moves the play cursor and starts the track there */
+    private void startTrack(int index) {
+        int n = queue.size();
+        if (n == 0) {
+            current = -1;
+            currentId = -1;
+            return;
+        }
+        // Skipping past either end wraps around
+        current = Math.floorMod(index, n);
+        currentId = queue.get(current);
+        engine.play(currentId, Player.paths.path(currentId), Player.levelOf(currentId));
+    }
+
+    /** Queue position after the current track; the same spot if it was removed */
+    private int nextIndex() {
+        return currentId >= 0 ? current + 1 : current;
+    }
+
+    /**
+     * Tells the engine which track follows the current one, so it can be
+     * decoded ahead. Called whenever the track or the queue around it changes.
+     */
+    private void preloadNext() {
+        if (engine.isStopped()) {
+            return;
+        }
+        int n = queue.size();
+        int next = nextIndex();
+        if (next >= n) {
+            if (!repeat || n == 0) {
+                engine.preload(-1, null, 1f);
+                return;
+            }
+            next = 0;
+        }
+        int id = queue.get(next);
+        engine.preload(id, Player.paths.path(id), Player.levelOf(id));
+    }
+
+    /** Moves the cursor to a track the engine started and counts the play */
+    private void trackStarted(int id) {
+        int n = queue.size();
+        int next = nextIndex();
+        if (current >= 0 && current < n && queue.get(current) == id) {
+            // started by startTrack
+        } else if (next >= 0 && next < n && queue.get(next) == id) {
+            current = next;
+        } else if (n > 0 && queue.get(0) == id) {
+            current = 0;
+        } else {
+            current = queue.indexOf(id);
+        }
+        currentId = current >= 0 ? id : -1;
+        failures = 0;
+        startedAt = System.currentTimeMillis();
+        if (countPlays) {
+            Player.recordPlay(id);
+        }
+        Consumer<String> view = trackView;
+        if (view != null && currentId >= 0) {
+            view.accept(Player.paths.path(id));
+        }
+        preloadNext();
+    }
+
+    /** Counts a skip if the user leaves the current track early */
+    private void endCurrent() {
+        if (countPlays && currentId >= 0 && System.currentTimeMillis() - startedAt < PlayStats.SKIP_MS) {
+            Player.recordSkip(currentId);
+        }
+    }
+
+    /**
+     * Keeps the play cursor on the playing track through queue edits, and
+     * the engine's next track in step with the queue. The current track
+     * plays on undisturbed.
+     */
+    private class QueueSync implements PlaylistListener {
+
+        @Override
+        public void trackInserted(int index, String path) {
+            if (current >= index) {
+                current++;
+            }
+            preloadNext();
+        }
+
+        @Override
+        public void tracksAppended(int from, List<String> paths) {
+            preloadNext();
+        }
+
+        @Override
+        public void trackRemoved(int index) {
+            if (index == current) {
+                currentId = -1;
+            } else if (index < current) {
+                current--;
+            }
+            preloadNext();
+        }
+
+        @Override
+        public void trackMoved(int from, int to) {
+            if (from == current) {
+                current = to;
+            } else if (from < current && to >= current) {
+                current--;
+            } else if (from > current && to <= current) {
+                current++;
+            }
+            preloadNext();
+        }
+
+        @Override
+        public void playlistReordered() {
+            if (currentId >= 0) {
+                current = queue.indexOf(currentId);
+            }
+            preloadNext();
+        }
+    }
+
+    /** Passes engine reports from the audio thread on to the event executor */
+    private class EngineEvents implements PlaybackEngine.Listener {
+
+        @Override
+        public void trackStarted(int id) {
+            events.execute(() -> PlayerZone.this.trackStarted(id));
+        }
+
+        @Override
+        public void trackFailed(int id, String reason) {
+            events.execute(() -> {
+                System.out.println("⚠️ Cannot play " + Player.paths.path(id) + ": " + reason);
+                // Go on with the next track, unless nothing seems to play
+                int next = queue.indexOf(id) + 1;
+                if (++failures < 10 && engine.isStopped() && (next < queue.size() || repeat)) {
+                    startTrack(next);
+                }
+            });
+        }
+
+        @Override
+        public void finished() {
+            System.out.println("⏹️ End of " + name);
+            System.out.println("📦 Decoded audio cache: " + PcmCache.summary());
+            System.out.println("🔊 Output: " + engine.output().summary());
+        }
+
+        // Latest position; at most one update waits on the executor at a time
+        private volatile int positionId;
+        private volatile long positionMs;
+        private final AtomicBoolean positionQueued = new AtomicBoolean();
+
+        @Override
+        public void positionChanged(int id, long ms) {
+            positionId = id;
+            positionMs = ms;
+            if (positionQueued.compareAndSet(false, true)) {
+                events.execute(this::showPosition);
+            }
+        }
+
+        private void showPosition() {
+            positionQueued.set(false);
+            BiConsumer<Integer, Integer> view = positionView;
+            if (view != null) {
+                TrackInfo t = Player.info(positionId);
+                view.accept((int) positionMs, t == null ? 0 : t.durationMs);
+            }
+        }
+    }
+}
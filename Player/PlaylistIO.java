@@ -0,0 +1,236 @@
+/**
+ * PlaylistIO.java
+ * -------------------------------------
+ * Reads and writes M3U, extended M3U (M3U8) and PLS playlist files.
+ *
+ * Files are streamed a line at a time: entries are resolved against the
+ * playlist's folder and handed on in fixed size batches, and at most a few
+ * batches wait for the playlist at once, so memory stays flat however long
+ * the file is. M3U and PLS files that are not UTF-8 are read as Latin-1.
+ * Entries that are not local audio files which exist are
+ * skipped. Export writes paths relative to the playlist's folder where
+ * possible, through a temporary file so a failed write leaves the old
+ * playlist alone.
+ */
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.nio.charset.MalformedInputException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Semaphore;
+import java.util.function.IntFunction;
+
+public class PlaylistIO {
+
+    static final int BATCH_SIZE = 512;
+
+    // Batches handed on but not yet taken by the playlist
+    private static final int MAX_PENDING = 4;
+
+    private PlaylistIO() {
+    }
+
+    /** True for the file types this class can read and write */
+    public static boolean isPlaylist(String name) {
+        String n = name.toLowerCase(Locale.ROOT);
+        return n.endsWith(".m3u") || n.endsWith(".m3u8") || n.endsWith(".pls");
+    }
+
+    /**
+     * Streams the tracks of a playlist file to a sink in batches. Blocks
+     * while too many batches are pending; the sink runs the callback it is
+     * given once it has taken a batch.
+     * @param file .m3u, .m3u8 or .pls file
+     * @param sink receives each batch and a callback to run once it is used
+     * @return number of entries that were skipped
+     */
+    public static int read(Path file, Batches sink) throws IOException, InterruptedException {
+        Path dir = file.toAbsolutePath().getParent();
+        Semaphore pending = new Semaphore(MAX_PENDING);
+        List<String> batch = new ArrayList<>(BATCH_SIZE);
+        int skipped = 0;
+
+        String name = file.toString().toLowerCase(Locale.ROOT);
+        boolean pls = name.endsWith(".pls");
+        // M3U8 is UTF-8 by definition; older M3U and PLS files are often
+        // Windows or Latin-1 text, read as such from the first line that
+        // is not valid UTF-8 on
+        Charset[] charsets = name.endsWith(".m3u8") ? new Charset[] {StandardCharsets.UTF_8}
+                : new Charset[] {StandardCharsets.UTF_8, StandardCharsets.ISO_8859_1};
+        int lines = 0;
+        for (int c = 0; c < charsets.length; c++) {
+            try (BufferedReader in = Files.newBufferedReader(file, charsets[c])) {
+                String line;
+                int n = 0;
+                while ((line = in.readLine()) != null) {
+                    if (n++ < lines) {
+                        continue; // taken before the switch to the fallback
+                    }
+                    if (lines++ == 0 && !line.isEmpty() && line.charAt(0) == '\uFEFF') {
+                        line = line.substring(1);
+                    }
+                    String entry = pls ? plsEntry(line) : m3uEntry(line);
+                    if (entry == null) {
+                        continue;
+                    }
+                    String path = resolve(dir, entry);
+                    if (path == null) {
+                        skipped++;
+                        continue;
+                    }
+                    batch.add(path);
+                    if (batch.size() == BATCH_SIZE) {
+                        pending.acquire();
+                        sink.accept(batch, pending::release);
+                        batch = new ArrayList<>(BATCH_SIZE);
+                    }
+                }
+                break;
+            } catch (MalformedInputException ex) {
+                if (c + 1 == charsets.length) {
+                    throw ex;
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            pending.acquire();
+            sink.accept(batch, pending::release);
+        }
+        return skipped;
+    }
+
+    /** Receives batches of track paths from {@link #read} */
+    public interface Batches {
+        void accept(List<String> paths, Runnable done);
+    }
+
+    /**
+     * Writes a playlist; the format follows the file extension (.pls, or
+     * extended M3U for anything else).
+     * @param count number of tracks
+     * @param pathAt absolute path of the track at a position
+     * @param infoAt tags of the track at a position, or null if unknown
+     */
+    public static void write(Path file, int count, IntFunction<String> pathAt,
+            IntFunction<TrackInfo> infoAt) throws IOException {
+        Path target = file.toAbsolutePath();
+        Path dir = target.getParent();
+        boolean pls = target.toString().toLowerCase(Locale.ROOT).endsWith(".pls");
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+
+        try {
+            try (BufferedWriter out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                out.write(pls ? "[playlist]" : "#EXTM3U");
+                out.newLine();
+                for (int i = 0; i < count; i++) {
+                    String path = relativize(dir, pathAt.apply(i));
+                    TrackInfo t = infoAt.apply(i);
+                    String title = t == null || t.title.isEmpty() ? null
+                            : t.artist.isEmpty() ? t.title : t.artist + " - " + t.title;
+                    int seconds = t == null || t.durationMs <= 0 ? -1 : (t.durationMs + 500) / 1000;
+                    if (pls) {
+                        out.write("File" + (i + 1) + "=" + path);
+                        out.newLine();
+                        if (title != null) {
+                            out.write("Title" + (i + 1) + "=" + title);
+                            out.newLine();
+                        }
+                        out.write("Length" + (i + 1) + "=" + seconds);
+                        out.newLine();
+                    } else {
+                        if (title != null || seconds >= 0) {
+                            out.write("#EXTINF:" + seconds + "," + (title != null ? title : ""));
+                            out.newLine();
+                        }
+                        out.write(path);
+                        out.newLine();
+                    }
+                }
+                if (pls) {
+                    out.write("NumberOfEntries=" + count);
+                    out.newLine();
+                    out.write("Version=2");
+                    out.newLine();
+                }
+            }
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException ex) {
+            // Leave no half-written file behind
+            Files.deleteIfExists(tmp);
+            throw ex;
+        }
+    }
+
+    // ---- parsing ----
+
+    /** Location in an M3U line, or null for comments, #EXT tags and blank lines */
+    private static String m3uEntry(String line) {
+        String s = line.trim();
+        return s.isEmpty() || s.charAt(0) == '#' ? null : s;
+    }
+
+    /** Location in a "FileN=..." PLS line, or null for any other line */
+    private static String plsEntry(String line) {
+        String s = line.trim();
+        if (s.length() < 6 || !s.regionMatches(true, 0, "File", 0, 4)) {
+            return null;
+        }
+        int eq = s.indexOf('=');
+        if (eq < 5) {
+            return null;
+        }
+        for (int i = 4; i < eq; i++) {
+            if (!Character.isDigit(s.charAt(i))) {
+                return null;
+            }
+        }
+        return s.substring(eq + 1).trim();
+    }
+
+    /** Absolute path of an entry, or null if it is not an existing local audio file */
+    private static String resolve(Path dir, String entry) {
+        try {
+            Path p;
+            if (entry.regionMatches(true, 0, "file:", 0, 5)) {
+                p = Paths.get(URI.create(entry));
+            } else if (entry.indexOf("://") > 0) {
+                // Streams and other remote entries
+                return null;
+            } else {
+                if (File.separatorChar == '/') {
+                    // Playlists written on Windows
+                    entry = entry.replace('\\', '/');
+                }
+                p = Paths.get(entry);
+                if (!p.isAbsolute() && dir != null) {
+                    p = dir.resolve(p);
+                }
+            }
+            p = p.normalize();
+            String path = p.toString();
+            return LibraryScanner.isTrack(path) && Files.isRegularFile(p) ? path : null;
+        } catch (IllegalArgumentException ex) {
+            return null;
+        }
+    }
+
+    /** Path relative to the playlist's folder if it lies below it, else absolute */
+    private static String relativize(Path dir, String path) {
+        Path p = Paths.get(path);
+        if (dir != null && p.startsWith(dir)) {
+            return dir.relativize(p).toString();
+        }
+        return path;
+    }
+}
@@ -0,0 +1,75 @@
+/**
+ * PlaylistListModel.java
+ * -------------------------------------
+ * List model that reads its rows straight from the playlist instead of
+ * keeping its own copy of every name. A row's name is only built when the
+ * list asks for it, which with a fixed cell size is just the rows on
+ * screen, and edits are announced as one event per edit: a whole batch of
+ * appended tracks or a re-sort is a single change for the list to handle.
+ * Used on the event dispatch thread only.
+ */
+
+import javax.swing.AbstractListModel;
+
+public class PlaylistListModel extends AbstractListModel<String> implements TrackRows {
+
+    // Rows the list has been told about
+    private int size;
+
+    @Override
+    public int getSize() {
+        return size;
+    }
+
+    @Override
+    public String getElementAt(int row) {
+        return Player.displayName(Player.idAt(row));
+    }
+
+    @Override
+    public int idAt(int row) {
+        return Player.idAt(row);
+    }
+
+    /** Rows were appended at the end, starting at {@code from} */
+    public void appended(int from, int count) {
+        if (count > 0) {
+            size += count;
+            fireIntervalAdded(this, from, from + count - 1);
+        }
+    }
+
+    /** One row was inserted */
+    public void inserted(int row) {
+        size++;
+        fireIntervalAdded(this, row, row);
+    }
+
+    /** One row was removed */
+    public void removed(int row) {
+        size--;
+        fireIntervalRemoved(this, row, row);
+    }
+
+    /** Rows between the two positions show other tracks now */
+    public void changed(int from, int to) {
+        if (size > 0) {
+            fireContentsChanged(this, Math.max(0, Math.min(from, to)), Math.min(size - 1, Math.max(from, to)));
+        }
+    }
+
+    /** Re-reads the whole playlist, with at most one event per kind */
+    public void reload() {
+        int old = size;
+        size = Player.trackCount();
+        if (size < old) {
+            fireIntervalRemoved(this, size, old - 1);
+        } else if (size > old) {
+            fireIntervalAdded(this, old, size - 1);
+        }
+        int common = Math.min(old, size);
+        if (common > 0) {
+            fireContentsChanged(this, 0, common - 1);
+        }
+    }
+}
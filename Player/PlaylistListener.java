@@ -0,0 +1,27 @@
+/**
+ * PlaylistListener.java
+ * -------------------------------------
+ * Receives single playlist edits as they happen, so views and the playback
+ * queue can apply the same change instead of being rebuilt from scratch.
+ * All calls are made on the event dispatch thread.
+ */
+
+import java.util.List;
+
+public interface PlaylistListener {
+
+    /** A track was inserted and now sits at {@code index} */
+    void trackInserted(int index, String path);
+
+    /** Tracks were appended at the end; the first one now sits at {@code from} */
+    void tracksAppended(int from, List<String> paths);
+
+    /** The track at {@code index} was removed */
+    void trackRemoved(int index);
+
+    /** The track at {@code from} was moved so that it now sits at {@code to} */
+    void trackMoved(int from, int to);
+
+    /** The whole order changed at once, e.g. after sorting */
+    void playlistReordered();
+}
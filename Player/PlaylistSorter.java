@@ -0,0 +1,276 @@
+/**
+ * PlaylistSorter.java
+ * -------------------------------------
+ * Sorts the playlist by file name, by a tag field or by play statistics.
+ *
+ * Text fields are compared through {@link java.text.CollationKey} bytes that are
+ * computed once per track, shortened, and cached by path id. To sort, the first bytes
+ * of each key are packed with the row into a long and the longs are sorted
+ * as primitives; only rows whose packed bytes tie are sorted further, by
+ * the next bytes of their keys in the same way. Numeric fields are packed
+ * with the row as well. The top level uses the parallel sort of
+ * {@link Arrays}, and the whole job runs on a worker thread so the list
+ * stays responsive.
+ * "Fav" only walks the tracks played more often than skipped, in
+ * {@link PlayStats} order, and keeps the rest of the playlist as it was.
+ */
+
+import java.text.Collator;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+public class PlaylistSorter {
+
+    /** Fields the playlist can be sorted by */
+    public enum Field {
+        NAME, FAV, TITLE, ARTIST, ALBUM, DURATION;
+
+        /** Maps the labels of the "Sort By" combo box */
+        static Field of(String label) {
+            return valueOf(label.trim().toUpperCase());
+        }
+
+        boolean isText() {
+            return this != DURATION && this != FAV;
+        }
+    }
+
+    // Collators are not thread safe; each sort worker gets its own
+    private static final ThreadLocal<Collator> COLLATOR = ThreadLocal.withInitial(() -> {
+        Collator c = Collator.getInstance();
+        c.setStrength(Collator.SECONDARY);
+        return c;
+    });
+
+    // Tied runs up to this size are finished by comparing whole keys
+    private static final int SMALL_RUN = 16;
+
+    // Collation key bytes per field, indexed by path id
+    private static final Map<Field, byte[][]> KEYS = new EnumMap<>(Field.class);
+
+    private PlaylistSorter() {
+    }
+
+    /**
+     * Returns the playlist ids in sorted order. Safe to call off the EDT.
+     * @param ids playlist ids in their current order
+     * @param field sort field
+     */
+    public static int[] sort(int[] ids, Field field) {
+        if (field == Field.FAV) {
+            return sortByPlays(ids, Player.stats());
+        }
+        if (!field.isText()) {
+            return sortByNumber(ids, field);
+        }
+
+        byte[][] keys = cachedKeys(ids, field);
+        IntStream.range(0, ids.length).parallel().forEach(i -> {
+            if (keys[i] == null) {
+                keys[i] = keyOf(text(ids[i], field));
+            }
+        });
+        storeKeys(ids, field, keys);
+
+        int[] rows = new int[ids.length];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = i;
+        }
+        int rowBits = Math.max(1, 32 - Integer.numberOfLeadingZeros(ids.length - 1));
+        sortRows(rows, 0, rows.length, keys, 0, rowBits);
+
+        int[] sorted = new int[ids.length];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = ids[rows[i]];
+        }
+        return sorted;
+    }
+
+    /**
+     * Sorts rows[from, to) by their keys from byte {@code depth} on. As many
+     * key bytes as fit above the row index are packed into a long, so the
+     * longs sort as primitives, and a tie of those bytes keeps the rows in
+     * order. Runs that tie are sorted by their next bytes, except short runs
+     * and runs whose keys end within the packed bytes, which are finished
+     * by comparing whole keys.
+     */
+    private static void sortRows(int[] rows, int from, int to, byte[][] keys, int depth, int rowBits) {
+        int n = to - from;
+        int bytes = (64 - rowBits) / 8;
+        int shift = 64 - bytes * 8;
+        long[] packed = new long[n];
+        for (int i = 0; i < n; i++) {
+            int row = rows[from + i];
+            byte[] k = keys[row];
+            long prefix = 0;
+            for (int b = depth; b < depth + bytes; b++) {
+                prefix = prefix << 8 | (b < k.length ? k[b] & 0xFF : 0);
+            }
+            // Flipping the top bit makes the signed sort an unsigned one
+            packed[i] = (prefix << shift | row) ^ Long.MIN_VALUE;
+        }
+        if (depth == 0) {
+            Arrays.parallelSort(packed);
+        } else {
+            Arrays.sort(packed);
+        }
+        long rowMask = (1L << rowBits) - 1;
+        for (int i = 0; i < n; i++) {
+            rows[from + i] = (int) (packed[i] & rowMask);
+        }
+
+        for (int i = 0; i < n; ) {
+            long prefix = packed[i] >>> shift;
+            int end = i + 1;
+            boolean longer = keys[rows[from + i]].length > depth + bytes;
+            while (end < n && packed[end] >>> shift == prefix) {
+                longer |= keys[rows[from + end]].length > depth + bytes;
+                end++;
+            }
+            if (end - i > 1) {
+                if (longer && end - i > SMALL_RUN) {
+                    sortRows(rows, from + i, from + end, keys, depth + bytes, rowBits);
+                } else {
+                    sortTied(rows, from + i, from + end, keys);
+                }
+            }
+            i = end;
+        }
+    }
+
+    /** Stable insertion sort by whole keys, for short runs of rows whose packed bytes tie */
+    private static void sortTied(int[] rows, int from, int to, byte[][] keys) {
+        for (int i = from + 1; i < to; i++) {
+            int row = rows[i];
+            int j = i - 1;
+            while (j >= from && Arrays.compareUnsigned(keys[rows[j]], keys[row]) > 0) {
+                rows[j + 1] = rows[j];
+                j--;
+            }
+            rows[j + 1] = row;
+        }
+    }
+
+    /**
+     * The collation key bytes of a text, re-encoded so that the key's 16-bit
+     * units below 0x80, which are most of them, take one byte and the rest
+     * two or three. The byte order stays that of the key, and twice as much
+     * of it fits in a packed prefix.
+     */
+    private static byte[] keyOf(String text) {
+        byte[] k = COLLATOR.get().getCollationKey(text).toByteArray();
+        byte[] out = new byte[k.length / 2 * 3];
+        int n = 0;
+        for (int i = 0; i + 1 < k.length; i += 2) {
+            int c = (k[i] & 0xFF) << 8 | (k[i + 1] & 0xFF);
+            if (c < 0x80) {
+                out[n++] = (byte) c;
+            } else if (c < 0x2000) {
+                out[n++] = (byte) (0x80 | c >> 8);
+                out[n++] = (byte) c;
+            } else {
+                out[n++] = (byte) 0xA0;
+                out[n++] = (byte) (c >> 8);
+                out[n++] = (byte) c;
+            }
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    /** Drops cached keys after a track's tags change */
+    static synchronized void invalidate(int id) {
+        for (byte[][] cache : KEYS.values()) {
+            if (id < cache.length) {
+                cache[id] = null;
+            }
+        }
+    }
+
+    private static int[] sortByNumber(int[] ids, Field field) {
+        long[] packed = new long[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            packed[i] = ((long) number(ids[i], field) << 32) | i;
+        }
+        Arrays.parallelSort(packed);
+
+        int[] sorted = new int[ids.length];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = ids[(int) packed[i]];
+        }
+        return sorted;
+    }
+
+    /** Tracks played more often than skipped first, favourites on top; the others keep their order */
+    private static int[] sortByPlays(int[] ids, PlayStats stats) {
+        BitSet inList = new BitSet();
+        for (int id : ids) {
+            inList.set(id);
+        }
+
+        int[] sorted = new int[ids.length];
+        int n = 0;
+        BitSet placed = new BitSet();
+        for (String path : stats.favourites()) {
+            int id = Player.paths.find(path);
+            if (id >= 0 && inList.get(id) && !placed.get(id)) {
+                placed.set(id);
+                sorted[n++] = id;
+            }
+        }
+        for (int id : ids) {
+            if (!placed.get(id)) {
+                sorted[n++] = id;
+            }
+        }
+        return sorted;
+    }
+
+    private static int number(int id, Field field) {
+        TrackInfo t = Player.info(id);
+        return t == null ? 0 : t.durationMs;
+    }
+
+    /** Looks up the cached keys of all rows at once; misses are null */
+    private static synchronized byte[][] cachedKeys(int[] ids, Field field) {
+        byte[][] keys = new byte[ids.length][];
+        byte[][] cache = KEYS.get(field);
+        if (cache != null) {
+            for (int i = 0; i < ids.length; i++) {
+                if (ids[i] < cache.length) {
+                    keys[i] = cache[ids[i]];
+                }
+            }
+        }
+        return keys;
+    }
+
+    private static synchronized void storeKeys(int[] ids, Field field, byte[][] keys) {
+        int max = 0;
+        for (int id : ids) {
+            max = Math.max(max, id);
+        }
+        byte[][] cache = KEYS.get(field);
+        if (cache == null || max >= cache.length) {
+            int cap = Math.max(max + 1, cache == null ? 1024 : cache.length * 2);
+            cache = cache == null ? new byte[cap][] : Arrays.copyOf(cache, cap);
+            KEYS.put(field, cache);
+        }
+        for (int i = 0; i < ids.length; i++) {
+            cache[ids[i]] = keys[i];
+        }
+    }
+
+    private static String text(int id, Field field) {
+        if (field == Field.NAME) {
+            return Player.paths.name(id);
+        }
+        TrackInfo t = Player.info(id);
+        String s = t == null ? "" : field == Field.TITLE ? t.title
+                : field == Field.ARTIST ? t.artist : t.album;
+        // Untagged tracks sort by file name
+        return s.isEmpty() ? Player.paths.name(id) : s;
+    }
+}
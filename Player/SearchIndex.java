@@ -0,0 +1,545 @@
+/**
+ * SearchIndex.java
+ * -------------------------------------
+ * In-memory n-gram index over track names and tags for the playlist filter.
+ *
+ * Text is split into words of letters and digits and folded to lower case.
+ * Each distinct word is stored once with the sorted list of tracks using
+ * it, and the n-grams point at words rather than tracks: every word adds
+ * its trigrams plus its first one and two letters. A query word of three
+ * letters or more matches anywhere inside a word, a shorter one matches
+ * the start of a word. Looking one up only touches the vocabulary, and the
+ * tracks of the matching words are collected into a bit set, so a query
+ * costs about the number of matches, not the size of the library. The
+ * sets of recent query words are kept, so typing one more letter only
+ * looks up the last word again.
+ *
+ * Removed tracks are skipped through the caller's liveness check, and
+ * tracks whose text was replaced (after their tags changed) or that were
+ * forgotten (before their id is reused) keep their old words for a while:
+ * they are checked against their current text before being returned, and
+ * once enough of them pile up {@link #purge} drops their old words in one
+ * pass and indexes their current text again.
+ */
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+public class SearchIndex {
+
+    private static final long PREFIX1 = 1L << 48;
+    private static final long PREFIX2 = 2L << 48;
+    private static final long TRIGRAM = 3L << 48;
+    private static final int[] NONE = new int[0];
+    private static final int CACHED_WORDS = 16;
+    // Words used by more tracks than this keep them as a bitmap
+    private static final int DENSE_MIN = 4096;
+
+    // Vocabulary: word -> id, and the tracks using each word, either as a
+    // list of ids or, for common words, as a bitmap
+    private final Map<String, Integer> wordIds = new HashMap<>();
+    private String[] wordText = new String[1024];
+    private int[][] tracks = new int[1024][];
+    private int[] trackLen = new int[1024];
+    private long[][] dense = new long[1024][];
+    private int[] wordInitial = new int[1024];
+    private final BitSet unsorted = new BitSet();
+    private int wordCount;
+
+    // Open addressing table from gram to slot, and the words of each gram
+    private long[] gramKeys = new long[1 << 12];
+    private int[] gramSlots = new int[1 << 12];
+    private int[][] gramWords = new int[1 << 11][];
+    private int[] gramWordLen = new int[1 << 11];
+    private int grams;
+
+    // Tracks by the first letter of any of their words, as bitmaps per
+    // prefix gram slot; one letter queries match so many words that they
+    // are cheaper kept up to date than collected
+    private long[][] initials = new long[1 << 11][];
+
+    // Ids seen, and ids whose words may be stale, with their counts
+    private final BitSet indexed = new BitSet();
+    private final BitSet reindexed = new BitSet();
+    private int indexedCount;
+    private int staleCount;
+
+    // Tracks matching recent query words; dropped whenever tracks are added
+    private final Map<String, BitSet> recent = new LinkedHashMap<String, BitSet>(32, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, BitSet> eldest) {
+            return size() > CACHED_WORDS;
+        }
+    };
+
+    public SearchIndex() {
+        Arrays.fill(gramSlots, -1);
+    }
+
+    /**
+     * Adds the words of a track's text. Calling it again for the same id
+     * adds more words to the ones it already has.
+     */
+    public synchronized void add(int id, String text) {
+        if (!indexed.get(id)) {
+            indexed.set(id);
+            indexedCount++;
+        }
+        recent.clear();
+
+        for (String w : words(text)) {
+            int wid = wordId(w);
+            initials[wordInitial[wid]] = setBit(initials[wordInitial[wid]], id);
+            if (dense[wid] != null) {
+                setDense(wid, id);
+                continue;
+            }
+            int len = trackLen[wid];
+            int[] p = tracks[wid];
+            if (len == p.length) {
+                p = tracks[wid] = Arrays.copyOf(p, len * 2);
+            }
+            if (len > 0 && p[len - 1] >= id) {
+                if (p[len - 1] == id) {
+                    continue;
+                }
+                unsorted.set(wid);
+            }
+            p[len] = id;
+            trackLen[wid] = len + 1;
+            if (len + 1 >= DENSE_MIN && (len + 1) * 32L >= indexed.length()) {
+                toDense(wid);
+            }
+        }
+    }
+
+    /** Moves a common word's tracks from an id list to a bitmap */
+    private void toDense(int wid) {
+        int[] p = tracks[wid];
+        int len = trackLen[wid];
+        dense[wid] = new long[(indexed.length() + 63) >>> 6];
+        trackLen[wid] = 0;
+        for (int i = 0; i < len; i++) {
+            setDense(wid, p[i]);
+        }
+        tracks[wid] = null;
+    }
+
+    private void setDense(int wid, int id) {
+        long[] d = dense[wid];
+        boolean isNew = (id >>> 6) >= d.length || (d[id >>> 6] & 1L << id) == 0;
+        dense[wid] = setBit(d, id);
+        if (isNew) {
+            trackLen[wid]++;
+        }
+    }
+
+    /** Sets a bit in a bitmap, growing or creating it as needed */
+    private static long[] setBit(long[] bits, int id) {
+        if (bits == null) {
+            bits = new long[(id >>> 6) + 1];
+        } else if ((id >>> 6) >= bits.length) {
+            bits = Arrays.copyOf(bits, Math.max((id >>> 6) + 1, bits.length * 3 / 2));
+        }
+        bits[id >>> 6] |= 1L << id;
+        return bits;
+    }
+
+    /**
+     * Indexes a new text for a track whose old words may no longer apply;
+     * the old words stay in the index but the track is checked on every hit.
+     */
+    public synchronized void replace(int id, String text) {
+        markStale(id);
+        add(id, text);
+    }
+
+    /** Drops the tracks kept for recent query words */
+    public synchronized void clearRecent() {
+        recent.clear();
+    }
+
+    /** Marks the words of a removed track as stale, so its id can be reused */
+    public synchronized void forget(int id) {
+        markStale(id);
+        recent.clear();
+    }
+
+    private void markStale(int id) {
+        if (!reindexed.get(id)) {
+            reindexed.set(id);
+            staleCount++;
+        }
+    }
+
+    /** Whether enough stale ids piled up to be worth a {@link #purge} */
+    public synchronized boolean isStale() {
+        return staleCount > Math.max(1024, indexedCount / 8);
+    }
+
+    /**
+     * Drops the words of the stale ids from every word, dense bitmap and
+     * initial, then indexes their current text again. Takes one pass over
+     * all postings.
+     * @param text current text of an id; null, or an IllegalArgumentException,
+     *        if the track is gone
+     */
+    public synchronized void purge(IntFunction<String> text) {
+        if (staleCount == 0) {
+            return;
+        }
+        long[] stale = reindexed.toLongArray();
+        for (int wid = 0; wid < wordCount; wid++) {
+            long[] d = dense[wid];
+            if (d != null) {
+                int n = 0;
+                for (int i = 0; i < d.length; i++) {
+                    if (i < stale.length) {
+                        d[i] &= ~stale[i];
+                    }
+                    n += Long.bitCount(d[i]);
+                }
+                trackLen[wid] = n;
+                continue;
+            }
+            int[] p = tracks[wid];
+            int m = 0;
+            for (int i = 0, len = trackLen[wid]; i < len; i++) {
+                int id = p[i];
+                if ((id >>> 6) >= stale.length || (stale[id >>> 6] & 1L << id) == 0) {
+                    p[m++] = id;
+                }
+            }
+            trackLen[wid] = m;
+        }
+        for (int s = 0; s < grams; s++) {
+            long[] b = initials[s];
+            if (b != null) {
+                for (int i = 0, end = Math.min(b.length, stale.length); i < end; i++) {
+                    b[i] &= ~stale[i];
+                }
+            }
+        }
+
+        BitSet ids = (BitSet) reindexed.clone();
+        reindexed.clear();
+        staleCount = 0;
+        recent.clear();
+        for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+            String current;
+            try {
+                current = text.apply(id);
+            } catch (IllegalArgumentException gone) {
+                current = null;
+            }
+            if (current != null) {
+                add(id, current);
+            } else {
+                indexed.clear(id);
+                indexedCount--;
+            }
+        }
+    }
+
+    /**
+     * Returns the set of ids whose text contains every word of the query.
+     * The set is the caller's to keep or change.
+     * @param query words typed by the user
+     * @param live ids still in the playlist; not modified
+     * @param text current text of an id, used to double check replaced ones
+     */
+    public synchronized BitSet search(String query, BitSet live, IntFunction<String> text) {
+        String[] words = words(query);
+        if (words.length == 0) {
+            return new BitSet();
+        }
+
+        BitSet hits = (BitSet) live.clone();
+        for (String w : words) {
+            BitSet set = recent.get(w);
+            if (set == null) {
+                set = tracksMatching(w);
+                recent.put(w, set);
+            }
+            hits.and(set);
+        }
+
+        BitSet check = (BitSet) reindexed.clone();
+        check.and(hits);
+        for (int id = check.nextSetBit(0); id >= 0; id = check.nextSetBit(id + 1)) {
+            if (!matches(text.apply(id), words)) {
+                hits.clear(id);
+            }
+        }
+        return hits;
+    }
+
+    /** Number of distinct words and of word-track pairs, for diagnostics */
+    public synchronized String stats() {
+        long pairs = 0;
+        for (int w = 0; w < wordCount; w++) {
+            pairs += trackLen[w];
+        }
+        return wordCount + " words, " + grams + " grams, " + pairs + " postings";
+    }
+
+    /** True if every query word occurs in the text under the same rules as the index */
+    static boolean matches(String text, String[] words) {
+        String[] tokens = words(text);
+        for (String w : words) {
+            boolean found = false;
+            for (String t : tokens) {
+                if (matchesWord(t, w)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean matchesWord(String word, String query) {
+        return query.length() < 3 ? word.startsWith(query) : word.contains(query);
+    }
+
+    /** Splits text into lower case words of letters and digits */
+    static String[] words(String text) {
+        String[] parts = text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+");
+        int n = 0;
+        for (String p : parts) {
+            if (!p.isEmpty()) {
+                parts[n++] = p;
+            }
+        }
+        return Arrays.copyOf(parts, n);
+    }
+
+    // ---- query ----
+
+    /** Union of the tracks of every vocabulary word the query word matches */
+    private BitSet tracksMatching(String w) {
+        if (w.length() == 1) {
+            int s = slot(PREFIX1 | w.charAt(0), false);
+            return s < 0 ? new BitSet() : BitSet.valueOf(initials[s]);
+        }
+        long[] bits = new long[(indexed.length() + 63) >>> 6];
+        for (int wid : wordsMatching(w)) {
+            long[] d = dense[wid];
+            if (d != null) {
+                for (int i = 0, end = Math.min(d.length, bits.length); i < end; i++) {
+                    bits[i] |= d[i];
+                }
+                continue;
+            }
+            int[] p = sortedTracks(wid);
+            for (int i = 0, len = trackLen[wid]; i < len; i++) {
+                bits[p[i] >>> 6] |= 1L << p[i];
+            }
+        }
+        return BitSet.valueOf(bits);
+    }
+
+    /** Vocabulary words the query word matches */
+    private int[] wordsMatching(String w) {
+        long[] keys = queryGrams(w);
+        int[][] lists = new int[keys.length][];
+        int[] lens = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            int s = slot(keys[i], false);
+            if (s < 0) {
+                return NONE;
+            }
+            lists[i] = gramWords[s];
+            lens[i] = gramWordLen[s];
+        }
+        if (keys.length == 1) {
+            // A prefix gram or a single trigram is exact
+            return Arrays.copyOf(lists[0], lens[0]);
+        }
+
+        int shortest = 0;
+        for (int i = 1; i < lists.length; i++) {
+            if (lens[i] < lens[shortest]) {
+                shortest = i;
+            }
+        }
+        int[] hits = Arrays.copyOf(lists[shortest], lens[shortest]);
+        int n = hits.length;
+        for (int i = 0; i < lists.length && n > 0; i++) {
+            if (i != shortest) {
+                n = intersect(hits, n, lists[i], lens[i]);
+            }
+        }
+
+        // Trigrams can come from different places in a word
+        int m = 0;
+        for (int i = 0; i < n; i++) {
+            if (wordText[hits[i]].contains(w)) {
+                hits[m++] = hits[i];
+            }
+        }
+        return Arrays.copyOf(hits, m);
+    }
+
+    /** Keeps the entries of a[0..n) that are also in b[0..blen); returns the count */
+    private static int intersect(int[] a, int n, int[] b, int blen) {
+        int m = 0;
+        int from = 0;
+        for (int i = 0; i < n && from < blen; i++) {
+            int at = Arrays.binarySearch(b, from, blen, a[i]);
+            if (at >= 0) {
+                a[m++] = a[i];
+                from = at + 1;
+            } else {
+                from = -at - 1;
+            }
+        }
+        return m;
+    }
+
+    /** Grams a query word needs: its prefix gram if short, else its trigrams */
+    private static long[] queryGrams(String w) {
+        if (w.length() == 1) {
+            return new long[] { PREFIX1 | w.charAt(0) };
+        }
+        if (w.length() == 2) {
+            return new long[] { PREFIX2 | (long) w.charAt(0) << 16 | w.charAt(1) };
+        }
+        long[] keys = new long[w.length() - 2];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = trigram(w, i);
+        }
+        return keys;
+    }
+
+    private static long trigram(String w, int i) {
+        return TRIGRAM | (long) w.charAt(i) << 32 | (long) w.charAt(i + 1) << 16 | w.charAt(i + 2);
+    }
+
+    // ---- vocabulary ----
+
+    private int wordId(String w) {
+        Integer known = wordIds.get(w);
+        if (known != null) {
+            return known;
+        }
+
+        int wid = wordCount++;
+        if (wid == wordText.length) {
+            wordText = Arrays.copyOf(wordText, wid * 2);
+            tracks = Arrays.copyOf(tracks, wid * 2);
+            trackLen = Arrays.copyOf(trackLen, wid * 2);
+            dense = Arrays.copyOf(dense, wid * 2);
+            wordInitial = Arrays.copyOf(wordInitial, wid * 2);
+        }
+        wordText[wid] = w;
+        tracks[wid] = new int[2];
+        wordIds.put(w, wid);
+
+        // Word ids only grow, so gram lists stay sorted
+        wordInitial[wid] = addGram(PREFIX1 | w.charAt(0), wid);
+        if (w.length() >= 2) {
+            addGram(PREFIX2 | (long) w.charAt(0) << 16 | w.charAt(1), wid);
+        }
+        for (int i = 0; i + 3 <= w.length(); i++) {
+            addGram(trigram(w, i), wid);
+        }
+        return wid;
+    }
+
+    /** Adds a word to a gram's list and returns the gram's slot */
+    private int addGram(long key, int wid) {
+        int s = slot(key, true);
+        int len = gramWordLen[s];
+        int[] p = gramWords[s];
+        if (p == null) {
+            p = gramWords[s] = new int[4];
+        } else if (len == p.length) {
+            p = gramWords[s] = Arrays.copyOf(p, len * 2);
+        }
+        if (len == 0 || p[len - 1] != wid) {
+            p[len] = wid;
+            gramWordLen[s] = len + 1;
+        }
+        return s;
+    }
+
+    /** Tracks of a word in ascending order without duplicates */
+    private int[] sortedTracks(int wid) {
+        int[] p = tracks[wid];
+        if (unsorted.get(wid)) {
+            int len = trackLen[wid];
+            Arrays.sort(p, 0, len);
+            int m = 0;
+            for (int i = 0; i < len; i++) {
+                if (m == 0 || p[m - 1] != p[i]) {
+                    p[m++] = p[i];
+                }
+            }
+            trackLen[wid] = m;
+            unsorted.clear(wid);
+        }
+        return p;
+    }
+
+    // ---- gram table ----
+
+    private int slot(long key, boolean create) {
+        int mask = gramKeys.length - 1;
+        int i = spread(key) & mask;
+        while (gramSlots[i] >= 0) {
+            if (gramKeys[i] == key) {
+                return gramSlots[i];
+            }
+            i = (i + 1) & mask;
+        }
+        if (!create) {
+            return -1;
+        }
+
+        int s = grams++;
+        if (s == gramWords.length) {
+            gramWords = Arrays.copyOf(gramWords, s * 2);
+            gramWordLen = Arrays.copyOf(gramWordLen, s * 2);
+            initials = Arrays.copyOf(initials, s * 2);
+        }
+        gramKeys[i] = key;
+        gramSlots[i] = s;
+        if (grams * 2 > gramKeys.length) {
+            rehash();
+        }
+        return s;
+    }
+
+    private void rehash() {
+        long[] oldKeys = gramKeys;
+        int[] oldSlots = gramSlots;
+        gramKeys = new long[oldKeys.length * 2];
+        gramSlots = new int[oldKeys.length * 2];
+        Arrays.fill(gramSlots, -1);
+        int mask = gramKeys.length - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldSlots[j] >= 0) {
+                int i = spread(oldKeys[j]) & mask;
+                while (gramSlots[i] >= 0) {
+                    i = (i + 1) & mask;
+                }
+                gramKeys[i] = oldKeys[j];
+                gramSlots[i] = oldSlots[j];
+            }
+        }
+    }
+
+    private static int spread(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
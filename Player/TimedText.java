@@ -0,0 +1,215 @@
+/**
+ * TimedText.java
+ * -------------------------------------
+ * Lyrics or captions for a track, read from a sidecar file next to it
+ * with the same name: song.lrc or song.srt for song.mp3.
+ *
+ * Cues are kept sorted by start time in plain arrays, and the cue for a
+ * point in the track is found by binary search. The text shown for each
+ * cue (the cue and the line after it) is put together once when the file
+ * is read, so following playback builds no strings.
+ */
+
+import java.io.IOException;
+import java.nio.charset.MalformedInputException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class TimedText {
+
+    // [mm:ss], [mm:ss.xx] or [mm:ss.xxx]; a line may carry several
+    private static final Pattern LRC_TIME = Pattern.compile("\\[(\\d+):(\\d{1,2})(?:[.:](\\d{1,3}))?\\]");
+    private static final Pattern LRC_OFFSET = Pattern.compile("\\[offset:\\s*([+-]?\\d+)\\]", Pattern.CASE_INSENSITIVE);
+    // 00:01:02,500 --> 00:01:04,000
+    private static final Pattern SRT_TIME = Pattern.compile(
+            "(\\d+):(\\d{2}):(\\d{2})[,.](\\d{1,3})\\s*-->\\s*(\\d+):(\\d{2}):(\\d{2})[,.](\\d{1,3})");
+
+    private final long[] starts;
+    // End of each cue; a cue without an end lasts until the next one
+    private final long[] ends;
+    private final String[] shown;
+
+    private TimedText(long[] starts, long[] ends, String[] shown) {
+        this.starts = starts;
+        this.ends = ends;
+        this.shown = shown;
+    }
+
+    /** Number of cues */
+    public int size() {
+        return starts.length;
+    }
+
+    /**
+     * Cue showing at a point in the track.
+     * @return cue index, or -1 before the first cue and in gaps between cues
+     */
+    public int cueAt(long ms) {
+        int lo = 0;
+        int hi = starts.length - 1;
+        int found = -1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (starts[mid] <= ms) {
+                found = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return found >= 0 && ms < ends[found] ? found : -1;
+    }
+
+    /** Text to show for a cue: its own lines, then the next cue's */
+    public String shown(int cue) {
+        return cue < 0 ? "" : shown[cue];
+    }
+
+    /**
+     * Reads the sidecar of an audio file.
+     * @return the cues, or null if the track has no .lrc or .srt file
+     */
+    public static TimedText forTrack(String audioPath) throws IOException {
+        int dot = audioPath.lastIndexOf('.');
+        String base = dot > audioPath.lastIndexOf(java.io.File.separatorChar) ? audioPath.substring(0, dot) : audioPath;
+        for (String ext : new String[] {".lrc", ".LRC", ".srt", ".SRT"}) {
+            Path p = Paths.get(base + ext);
+            if (Files.isRegularFile(p)) {
+                List<String> lines = readLines(p);
+                return ext.equalsIgnoreCase(".lrc") ? parseLrc(lines) : parseSrt(lines);
+            }
+        }
+        return null;
+    }
+
+    /** Reads UTF-8 (without its byte order mark), falling back to Latin-1 for older lyric files */
+    private static List<String> readLines(Path p) throws IOException {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(p, StandardCharsets.UTF_8);
+        } catch (MalformedInputException ex) {
+            lines = Files.readAllLines(p, StandardCharsets.ISO_8859_1);
+        }
+        if (!lines.isEmpty() && lines.get(0).startsWith("\uFEFF")) {
+            lines.set(0, lines.get(0).substring(1));
+        }
+        return lines;
+    }
+
+    static TimedText parseLrc(List<String> lines) {
+        List<long[]> times = new ArrayList<>();
+        List<String> texts = new ArrayList<>();
+        long offset = 0;
+        for (String line : lines) {
+            Matcher off = LRC_OFFSET.matcher(line);
+            if (off.find()) {
+                // A positive offset shows the lyrics earlier
+                offset = Long.parseLong(off.group(1).replace("+", ""));
+                continue;
+            }
+            Matcher m = LRC_TIME.matcher(line);
+            int end = 0;
+            List<Long> at = new ArrayList<>();
+            while (m.find() && m.start() == end) {
+                at.add(Long.parseLong(m.group(1)) * 60_000 + Long.parseLong(m.group(2)) * 1000 + fraction(m.group(3)));
+                end = m.end();
+            }
+            String text = line.substring(end).trim();
+            for (long t : at) {
+                times.add(new long[] {t, texts.size()});
+                texts.add(text);
+            }
+        }
+        int n = times.size();
+        times.sort((a, b) -> Long.compare(a[0], b[0]));
+        long[] starts = new long[n];
+        long[] ends = new long[n];
+        String[] text = new String[n];
+        for (int i = 0; i < n; i++) {
+            starts[i] = Math.max(0, times.get(i)[0] - offset);
+            text[i] = texts.get((int) times.get(i)[1]);
+        }
+        for (int i = 0; i < n; i++) {
+            ends[i] = i + 1 < n ? starts[i + 1] : Long.MAX_VALUE;
+        }
+        return new TimedText(starts, ends, join(text));
+    }
+
+    static TimedText parseSrt(List<String> lines) {
+        List<long[]> times = new ArrayList<>();
+        List<String> texts = new ArrayList<>();
+        StringBuilder text = null;
+        // A blank line ends a cue's text; the cue number comes before the times
+        boolean open = false;
+        for (String line : lines) {
+            Matcher m = SRT_TIME.matcher(line);
+            if (m.find()) {
+                if (text != null) {
+                    texts.add(text.toString());
+                }
+                times.add(new long[] {clock(m, 1), clock(m, 5)});
+                text = new StringBuilder();
+                open = true;
+            } else if (line.trim().isEmpty()) {
+                open = false;
+            } else if (open) {
+                if (text.length() > 0) {
+                    text.append('\n');
+                }
+                // Drop the simple formatting tags subtitles often carry
+                text.append(line.trim().replaceAll("</?[ibu]>", ""));
+            }
+        }
+        if (text != null) {
+            texts.add(text.toString());
+        }
+
+        Integer[] order = new Integer[times.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(times.get(a)[0], times.get(b)[0]));
+        long[] starts = new long[order.length];
+        long[] ends = new long[order.length];
+        String[] sorted = new String[order.length];
+        for (int i = 0; i < order.length; i++) {
+            starts[i] = times.get(order[i])[0];
+            ends[i] = times.get(order[i])[1];
+            sorted[i] = texts.get(order[i]);
+        }
+        return new TimedText(starts, ends, join(sorted));
+    }
+
+    /** Shown text per cue: the cue, then the next one to read ahead */
+    private static String[] join(String[] text) {
+        String[] shown = new String[text.length];
+        for (int i = 0; i < text.length; i++) {
+            shown[i] = i + 1 < text.length ? text[i] + "\n" + text[i + 1] : text[i];
+        }
+        return shown;
+    }
+
+    private static long clock(Matcher m, int g) {
+        return Long.parseLong(m.group(g)) * 3_600_000 + Long.parseLong(m.group(g + 1)) * 60_000
+                + Long.parseLong(m.group(g + 2)) * 1000 + fraction(m.group(g + 3));
+    }
+
+    /** Milliseconds from the digits after the seconds: "5" is 500, "05" is 50 */
+    private static long fraction(String digits) {
+        if (digits == null) {
+            return 0;
+        }
+        long v = Long.parseLong(digits);
+        for (int i = digits.length(); i < 3; i++) {
+            v *= 10;
+        }
+        return v;
+    }
+}
@@ -0,0 +1,190 @@
+/**
+ * TrackCellRenderer.java
+ * -------------------------------------
+ * Renders a playlist row as "title - artist" on the left and the play
+ * count and duration on the right.
+ *
+ * One component paints every row. The texts of a row, already cut to the
+ * width of the list, are kept in a small cache keyed by track id, so
+ * scrolling past rows that were shown before only draws cached strings:
+ * nothing is looked up, measured or allocated while painting. An entry is
+ * rebuilt when the track's tags, the play statistics, the font or the
+ * width change.
+ */
+
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.util.Arrays;
+import javax.swing.JComponent;
+import javax.swing.JList;
+import javax.swing.ListCellRenderer;
+import javax.swing.ListModel;
+
+public class TrackCellRenderer extends JComponent implements ListCellRenderer<Object> {
+
+    // Direct mapped cache; comfortably more slots than rows on screen
+    private static final int CACHE = 1024;
+    private static final int PAD = 4;
+    private static final String ELLIPSIS = "…";
+
+    private final int[] cacheId = new int[CACHE];
+    private final TrackInfo[] cacheInfo = new TrackInfo[CACHE];
+    private final int[] cacheStats = new int[CACHE];
+    private final int[] cacheWidth = new int[CACHE];
+    private final String[] cacheText = new String[CACHE];
+    private final String[] cacheLeft = new String[CACHE];
+    private final String[] cacheRight = new String[CACHE];
+    private final int[] cacheRightWidth = new int[CACHE];
+
+    // Row being painted: a cache slot, or plain text for rows without a track
+    private int slot;
+    private String plain;
+    private FontMetrics metrics;
+
+    public TrackCellRenderer() {
+        Arrays.fill(cacheId, -1);
+        setOpaque(true);
+    }
+
+    @Override
+    public JComponent getListCellRendererComponent(JList<?> list, Object value, int index,
+            boolean isSelected, boolean cellHasFocus) {
+        Font font = list.getFont();
+        if (metrics == null || metrics.getFont() != font) {
+            setFont(font);
+            metrics = getFontMetrics(font);
+            Arrays.fill(cacheId, -1);
+        }
+        setBackground(isSelected ? list.getSelectionBackground() : list.getBackground());
+        setForeground(isSelected ? list.getSelectionForeground() : list.getForeground());
+
+        ListModel<?> model = list.getModel();
+        if (index < 0 || !(model instanceof TrackRows)) {
+            // Prototype value, or a list of plain strings
+            slot = -1;
+            plain = String.valueOf(value);
+            return this;
+        }
+        int id = ((TrackRows) model).idAt(index);
+        slot = (id ^ (id >>> 10)) & (CACHE - 1);
+        TrackInfo info = Player.info(id);
+        int stats = Player.statsVersion();
+        if (cacheId[slot] != id || cacheInfo[slot] != info || cacheStats[slot] != stats) {
+            cacheId[slot] = id;
+            cacheInfo[slot] = info;
+            cacheStats[slot] = stats;
+            cacheWidth[slot] = -1;
+            cacheText[slot] = leftText(id, info);
+            cacheRight[slot] = rightText(id, info);
+            cacheRightWidth[slot] = metrics.stringWidth(cacheRight[slot]);
+        }
+        return this;
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        FontMetrics fm = metrics != null ? metrics : getFontMetrics(getFont());
+        int width = plain != null && slot < 0 ? fm.stringWidth(plain) : 0;
+        return new Dimension(width + 2 * PAD, fm.getHeight() + 2);
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        int w = getWidth();
+        int h = getHeight();
+        g.setColor(getBackground());
+        g.fillRect(0, 0, w, h);
+        g.setColor(getForeground());
+        g.setFont(getFont());
+        int baseline = (h - metrics.getHeight()) / 2 + metrics.getAscent();
+
+        if (slot < 0) {
+            g.drawString(plain, PAD, baseline);
+            return;
+        }
+        if (cacheWidth[slot] != w) {
+            // Cut the left text once per width, not on every paint
+            int room = w - 3 * PAD - cacheRightWidth[slot];
+            cacheLeft[slot] = fit(cacheText[slot], room);
+            cacheWidth[slot] = w;
+        }
+        g.drawString(cacheLeft[slot], PAD, baseline);
+        g.drawString(cacheRight[slot], w - PAD - cacheRightWidth[slot], baseline);
+    }
+
+    /** "title - artist", or the file name for untagged tracks */
+    private static String leftText(int id, TrackInfo info) {
+        if (info == null || info.title.isEmpty()) {
+            String name = Player.displayName(id);
+            int dot = name.lastIndexOf('.');
+            return dot > 0 ? name.substring(0, dot) : name;
+        }
+        return info.artist.isEmpty() ? info.title : info.title + " - " + info.artist;
+    }
+
+    /** Play count and duration, e.g. "12x  3:45" */
+    private static String rightText(int id, TrackInfo info) {
+        StringBuilder sb = new StringBuilder(12);
+        int plays = Player.playCount(id);
+        if (plays > 0) {
+            sb.append(plays).append("x  ");
+        }
+        if (info != null && info.durationMs > 0) {
+            int s = info.durationMs / 1000;
+            sb.append(s / 60).append(':');
+            if (s % 60 < 10) {
+                sb.append('0');
+            }
+            sb.append(s % 60);
+        }
+        return sb.toString();
+    }
+
+    /** Longest prefix of the text that fits, with an ellipsis if cut */
+    private String fit(String text, int room) {
+        if (metrics.stringWidth(text) <= room) {
+            return text;
+        }
+        int lo = 0;
+        int hi = text.length();
+        int dots = metrics.stringWidth(ELLIPSIS);
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (metrics.stringWidth(text.substring(0, mid)) + dots <= room) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return text.substring(0, lo) + ELLIPSIS;
+    }
+
+    // Skip the change notifications the default renderer also drops
+
+    @Override
+    public void validate() {
+    }
+
+    @Override
+    public void invalidate() {
+    }
+
+    @Override
+    public void revalidate() {
+    }
+
+    @Override
+    public void repaint(long tm, int x, int y, int width, int height) {
+    }
+
+    @Override
+    public void repaint(Rectangle r) {
+    }
+
+    @Override
+    protected void firePropertyChange(String propertyName, Object oldValue, Object newValue) {
+    }
+}
@@ -0,0 +1,42 @@
+/**
+ * TrackInfo.java
+ * -------------------------------------
+ * What the library knows about one track: the file size and modification
+ * time it had when it was last looked at, and its tags. The path itself
+ * lives in the {@link PathStore}; entries are kept by path id.
+ */
+
+public class TrackInfo {
+
+    long size;
+    long mtime;
+
+    // Tags; empty until the file has been read
+    String title = "";
+    String artist = "";
+    String album = "";
+    int durationMs;
+    boolean tagged;
+
+    // Loudness in LUFS (NaN if it could not be measured), sample peak
+    // (1 is full scale) and gated 400 ms blocks; set once analyzed
+    float loudness = Float.NaN;
+    float peak;
+    int loudnessBlocks;
+    boolean analyzed;
+
+    public TrackInfo(long size, long mtime) {
+        this.size = size;
+        this.mtime = mtime;
+    }
+
+    /** True if the file still has the size and time recorded here */
+    public boolean matches(long size, long mtime) {
+        return this.size == size && this.mtime == mtime;
+    }
+
+    @Override
+    public String toString() {
+        return title;
+    }
+}
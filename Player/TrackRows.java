@@ -0,0 +1,12 @@
+/**
+ * TrackRows.java
+ * -------------------------------------
+ * A list model whose rows are playlist tracks, so renderers can look up
+ * a row's track instead of parsing the text shown for it.
+ */
+
+public interface TrackRows {
+
+    /** Path id of the track shown in a row */
+    int idAt(int row);
+}
@@ -0,0 +1,186 @@
+/**
+ * TrackStream.java
+ * -------------------------------------
+ * One track being decoded ahead of playback. A decoder task opens the file
+ * with the {@link Decoder} for its format and fills a {@link PcmRing} that
+ * the audio thread drains. The padding the decoder reports at either end
+ * is cut here, so the last real sample of one track is followed directly
+ * by the first real sample of the next.
+ *
+ * A stream can also start part way into a track, for seeking: decoders
+ * that can seek jump there, others decode from the top and drop the
+ * samples before it.
+ *
+ * The ring and the decode chunk come from {@link PcmPool}, and the decoder
+ * threads are reused, so starting a track allocates almost nothing and the
+ * decode loop itself allocates nothing.
+ *
+ * Tracks played from the top are also stored in the {@link PcmCache} as
+ * they decode, and read from there the next time. A track that is skipped
+ * before it has decoded completely goes on decoding for the cache alone,
+ * at low priority, so going back to it starts it at once.
+ */
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.sound.sampled.AudioFormat;
+
+public class TrackStream {
+
+    // Shared by all tracks; a thread is only idle between tracks
+    private static final ExecutorService DECODERS = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "decoder");
+        t.setDaemon(true);
+        return t;
+    });
+
+    final int id;
+    final String path;
+    final PcmRing ring = PcmPool.ring();
+    // Where in the track playback starts, in ms; 0 unless seeking
+    final long startMs;
+    // True if this carries on a track that was already playing (a seek)
+    final boolean continues;
+    // Gain that levels the track's loudness; may change while it plays
+    volatile float level = 1f;
+
+    // First frame in the ring, counted from the start of the real audio
+    private volatile long startFrame;
+    private volatile AudioFormat format;
+    private volatile String error;
+    // Set once the decoder task has let go of the ring
+    private volatile boolean finished;
+
+    /** Starts decoding straight away; nothing is read on the calling thread */
+    public TrackStream(int id, String path) {
+        this(id, path, 0, false);
+    }
+
+    /** Starts decoding from a point in the track */
+    public TrackStream(int id, String path, long startMs, boolean continues) {
+        this.id = id;
+        this.path = path;
+        this.startMs = startMs;
+        this.continues = continues;
+        DECODERS.execute(this::decode);
+    }
+
+    /** Frame of the track the ring starts at; valid once {@link #format} is set */
+    public long startFrame() {
+        return startFrame;
+    }
+
+    /** PCM format of the ring's bytes, or null until the file is open */
+    public AudioFormat format() {
+        return format;
+    }
+
+    /** Why the track could not be decoded, or null */
+    public String error() {
+        return error;
+    }
+
+    /** Stops decoding; the decoder task closes the file and ends */
+    public void close() {
+        ring.close();
+    }
+
+    /**
+     * Gives the ring back to the pool once the decoder has let go of it.
+     * Call after {@link #close} when the audio thread is done with the track.
+     * @return false if the decoder is still winding down; try again later
+     */
+    boolean recycle() {
+        if (!finished) {
+            return false;
+        }
+        PcmPool.recycle(ring);
+        return true;
+    }
+
+    private void decode() {
+        byte[] chunk = PcmPool.chunk();
+        PcmCache.Writer cache = null;
+        boolean finishing = false;
+        Decoder cached = PcmCache.open(path);
+        try (Decoder d = cached != null ? cached : Decoders.open(path)) {
+            d.prepareSeeking();
+            AudioFormat f = d.format();
+            if (cached == null && startMs == 0) {
+                cache = PcmCache.writer(path, f);
+            }
+            int frameSize = f.getFrameSize();
+            long skip = d.leadingFrames() * frameSize;
+            long keep = d.audioFrames() >= 0 ? d.audioFrames() * frameSize : Long.MAX_VALUE;
+            if (startMs > 0) {
+                long frame = (long) (startMs * f.getFrameRate() / 1000);
+                if (d.audioFrames() >= 0) {
+                    frame = Math.min(frame, d.audioFrames());
+                }
+                if (d.seek(d.leadingFrames() + frame)) {
+                    skip = 0;
+                } else {
+                    skip += frame * frameSize;
+                }
+                keep -= keep == Long.MAX_VALUE ? 0 : frame * frameSize;
+                startFrame = frame;
+            }
+            format = f;
+
+            int whole = chunk.length - chunk.length % frameSize;
+            int n;
+            while (keep > 0 && (n = d.read(chunk, 0, whole)) >= 0) {
+                int off = 0;
+                if (skip > 0) {
+                    off = (int) Math.min(skip, n);
+                    skip -= off;
+                }
+                int len = (int) Math.min(n - off, keep);
+                if (len > 0) {
+                    keep -= len;
+                    if (!finishing && !ring.write(chunk, off, len)) {
+                        if (cache == null || !PcmCache.startFinishing()) {
+                            return;
+                        }
+                        // Let go of the ring and decode the rest for the cache only
+                        finishing = true;
+                        letGo();
+                        Thread.currentThread().setPriority(Thread.MIN_PRIORITY);
+                    }
+                    if (cache != null && !cache.write(chunk, off, len)) {
+                        cache = null;
+                        if (finishing) {
+                            return;
+                        }
+                    }
+                }
+            }
+            if (cache != null) {
+                cache.commit();
+                cache = null;
+            }
+        } catch (IOException | RuntimeException ex) {
+            if (!finishing) {
+                error = ex.getMessage() != null ? ex.getMessage() : ex.toString();
+            }
+        } finally {
+            if (cache != null) {
+                cache.abort();
+            }
+            PcmPool.recycle(chunk);
+            if (finishing) {
+                Thread.currentThread().setPriority(Thread.NORM_PRIORITY);
+                PcmCache.doneFinishing();
+            } else {
+                letGo();
+            }
+        }
+    }
+
+    /** Marks the end of the ring and hands it over to whoever recycles it */
+    private void letGo() {
+        ring.end();
+        finished = true;
+    }
+}
@@ -0,0 +1,276 @@
+/**
+ * WavDecoder.java
+ * -------------------------------------
+ * Decoder for uncompressed WAV files: 8, 16, 24 and 32-bit integer PCM and
+ * 32-bit float, including the WAVE_FORMAT_EXTENSIBLE variants. Samples are
+ * read with positioned {@link FileChannel} reads into a pooled chunk and
+ * converted to 16-bit into the caller's buffer, so decoding allocates
+ * nothing. Titles are taken from the LIST/INFO chunk if the file has one.
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import javax.sound.sampled.AudioFormat;
+
+public class WavDecoder implements Decoder {
+
+    // Chunk ids as little endian ints
+    private static final int RIFF = 0x46464952;
+    private static final int WAVE = 0x45564157;
+    private static final int FMT = 0x20746D66;
+    private static final int DATA = 0x61746164;
+    private static final int LIST = 0x5453494C;
+    private static final int INFO = 0x4F464E49;
+    private static final int INAM = 0x4D414E49;
+    private static final int IART = 0x54524149;
+    private static final int IPRD = 0x44525049;
+
+    private static final int PCM = 1;
+    private static final int FLOAT = 3;
+    private static final int EXTENSIBLE = 0xFFFE;
+
+    // LIST chunks larger than this are not tags we care about
+    private static final int MAX_LIST = 64 * 1024;
+
+    private final FileChannel ch;
+    private final Header h;
+    private final AudioFormat format;
+    private final byte[] raw;
+    private final ByteBuffer io;
+    private final long end;
+    private long pos;
+
+    public WavDecoder(String path) throws IOException {
+        ch = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+        try {
+            h = readHeader(ch, false);
+        } catch (IOException ex) {
+            ch.close();
+            throw ex;
+        }
+        format = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, h.sampleRate, 16,
+                h.channels, h.channels * 2, h.sampleRate, false);
+        raw = PcmPool.chunk();
+        io = ByteBuffer.wrap(raw);
+        pos = h.dataStart;
+        end = h.dataStart + h.dataSize;
+    }
+
+    @Override
+    public AudioFormat format() {
+        return format;
+    }
+
+    @Override
+    public int read(byte[] buf, int off, int len) throws IOException {
+        int outFrame = h.channels * 2;
+        long left = (end - pos) / h.blockAlign;
+        if (left <= 0) {
+            return -1;
+        }
+        int frames = (int) Math.min(left, Math.min(len / outFrame, raw.length / h.blockAlign));
+        if (frames == 0) {
+            return 0;
+        }
+        io.clear();
+        io.limit(frames * h.blockAlign);
+        while (io.hasRemaining()) {
+            if (ch.read(io, pos + io.position()) < 0) {
+                break;
+            }
+        }
+        int got = io.position() / h.blockAlign;
+        if (got == 0) {
+            return -1;
+        }
+        pos += (long) got * h.blockAlign;
+        convert(raw, got * h.channels, buf, off);
+        return got * outFrame;
+    }
+
+    @Override
+    public boolean seek(long frame) {
+        pos = Math.min(end, h.dataStart + Math.max(0, frame) * h.blockAlign);
+        return true;
+    }
+
+    /** Converts samples from the file's layout to 16-bit little endian */
+    private void convert(byte[] in, int samples, byte[] out, int off) {
+        switch (h.bits) {
+            case 8:
+                // Unsigned bytes; flipping the top bit centres them on zero
+                for (int i = 0, o = off; i < samples; i++, o += 2) {
+                    out[o] = 0;
+                    out[o + 1] = (byte) (in[i] ^ 0x80);
+                }
+                break;
+            case 16:
+                System.arraycopy(in, 0, out, off, samples * 2);
+                break;
+            case 24:
+                for (int i = 0, o = off; i < samples; i++, o += 2) {
+                    out[o] = in[3 * i + 1];
+                    out[o + 1] = in[3 * i + 2];
+                }
+                break;
+            default:
+                if (h.encoding == FLOAT) {
+                    for (int i = 0, o = off; i < samples; i++, o += 2) {
+                        int bits = (in[4 * i] & 0xFF) | (in[4 * i + 1] & 0xFF) << 8
+                                | (in[4 * i + 2] & 0xFF) << 16 | in[4 * i + 3] << 24;
+                        float f = Float.intBitsToFloat(bits);
+                        int s = (int) (Math.max(-1f, Math.min(1f, f)) * 32767f);
+                        out[o] = (byte) s;
+                        out[o + 1] = (byte) (s >> 8);
+                    }
+                } else {
+                    for (int i = 0, o = off; i < samples; i++, o += 2) {
+                        out[o] = in[4 * i + 2];
+                        out[o + 1] = in[4 * i + 3];
+                    }
+                }
+                break;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        PcmPool.recycle(raw);
+        ch.close();
+    }
+
+    /** What the RIFF header says about the samples, and the tags */
+    static final class Header {
+        int encoding;
+        int channels;
+        int sampleRate;
+        int bits;
+        int blockAlign;
+        long dataStart = -1;
+        long dataSize;
+        String title = "";
+        String artist = "";
+        String album = "";
+    }
+
+    /**
+     * Walks the RIFF chunks up to the sample data.
+     * @param tags also read the LIST/INFO chunk, which may follow the data
+     */
+    static Header readHeader(FileChannel ch, boolean tags) throws IOException {
+        long size = ch.size();
+        ByteBuffer riff = le(Mp3HeaderReader.readAt(ch, 0, 12));
+        if (riff.remaining() < 12 || riff.getInt(0) != RIFF || riff.getInt(8) != WAVE) {
+            throw new IOException("Not a WAV file");
+        }
+        Header h = new Header();
+        long pos = 12;
+        while (pos + 8 <= size) {
+            ByteBuffer c = le(Mp3HeaderReader.readAt(ch, pos, 8));
+            int id = c.getInt(0);
+            long len = c.getInt(4) & 0xFFFFFFFFL;
+            long body = pos + 8;
+            if (id == FMT) {
+                ByteBuffer f = le(Mp3HeaderReader.readAt(ch, body, (int) Math.min(len, 40)));
+                if (f.remaining() < 16) {
+                    throw new IOException("Broken WAV format chunk");
+                }
+                h.encoding = f.getShort(0) & 0xFFFF;
+                h.channels = f.getShort(2) & 0xFFFF;
+                h.sampleRate = f.getInt(4);
+                h.blockAlign = f.getShort(12) & 0xFFFF;
+                h.bits = f.getShort(14) & 0xFFFF;
+                if (h.encoding == EXTENSIBLE && f.remaining() >= 26) {
+                    h.encoding = f.getShort(24) & 0xFFFF;
+                }
+            } else if (id == DATA) {
+                h.dataStart = body;
+                // Streamed files may leave the length unset
+                h.dataSize = Math.min(len, size - body);
+                if (!tags) {
+                    break;
+                }
+            } else if (id == LIST && tags && len >= 4 && len <= MAX_LIST) {
+                readInfo(le(Mp3HeaderReader.readAt(ch, body, (int) len)), h);
+            }
+            pos = body + len + (len & 1);
+        }
+
+        boolean supported = h.encoding == PCM && (h.bits == 8 || h.bits == 16 || h.bits == 24 || h.bits == 32)
+                || h.encoding == FLOAT && h.bits == 32;
+        if (!supported || h.channels < 1 || h.sampleRate <= 0) {
+            throw new IOException("Unsupported WAV format " + h.encoding + ", " + h.bits + " bit");
+        }
+        if (h.blockAlign != h.channels * h.bits / 8 || h.dataStart < 0) {
+            throw new IOException("Broken WAV header");
+        }
+        return h;
+    }
+
+    /** Picks title, artist and album out of a LIST/INFO chunk body */
+    private static void readInfo(ByteBuffer b, Header h) {
+        if (b.remaining() < 4 || b.getInt(0) != INFO) {
+            return;
+        }
+        int pos = 4;
+        while (pos + 8 <= b.remaining()) {
+            int id = b.getInt(pos);
+            int len = b.getInt(pos + 4);
+            if (len < 0 || pos + 8 + len > b.remaining()) {
+                break;
+            }
+            String text = new String(b.array(), pos + 8, len, StandardCharsets.UTF_8);
+            int nul = text.indexOf('\0');
+            text = (nul >= 0 ? text.substring(0, nul) : text).trim();
+            if (id == INAM) {
+                h.title = text;
+            } else if (id == IART) {
+                h.artist = text;
+            } else if (id == IPRD) {
+                h.album = text;
+            }
+            pos += 8 + len + (len & 1);
+        }
+    }
+
+    private static ByteBuffer le(ByteBuffer b) {
+        return b.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /** Provider for .wav files */
+    static class Provider implements DecoderProvider {
+
+        @Override
+        public boolean canDecode(String name) {
+            int n = name.length();
+            return n > 4 && name.regionMatches(true, n - 4, ".wav", 0, 4);
+        }
+
+        @Override
+        public Decoder open(String path) throws IOException {
+            return new WavDecoder(path);
+        }
+
+        @Override
+        public TrackInfo readInfo(String path) throws IOException {
+            Path file = Paths.get(path);
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+                TrackInfo t = new TrackInfo(ch.size(), Files.getLastModifiedTime(file).toMillis());
+                Header h = readHeader(ch, true);
+                t.title = h.title;
+                t.artist = h.artist;
+                t.album = h.album;
+                t.durationMs = (int) (h.dataSize / h.blockAlign * 1000L / h.sampleRate);
+                t.tagged = true;
+                return t;
+            }
+        }
+    }
+}
@@ -0,0 +1,256 @@
+/**
+ * WaveformPeaks.java
+ * -------------------------------------
+ * Overview of a track's waveform for the progress slider: the lowest and
+ * highest sample in each of {@link #BUCKETS} equal slices of the track,
+ * one byte each, so a whole track takes 4 KB.
+ *
+ * Peaks are worked out by decoding the track once on a background thread,
+ * a thousand frames at a time, and saved under ~/.project-player/waves,
+ * checked against the file's size and modification time when loaded
+ * again. The last few are also kept in memory, so going back to a track
+ * shows its waveform at once.
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+public class WaveformPeaks {
+
+    /** Slices per track */
+    static final int BUCKETS = 2048;
+
+    /** Where computed peaks are saved */
+    static final Path DIR = Paths.get(System.getProperty("user.home"), ".project-player", "waves");
+
+    private static final int MAGIC = 0x50574156; // "PWAV"
+    private static final int VERSION = 1;
+    // Peaks kept in memory
+    private static final int CACHED = 16;
+    // Frames folded into one value while decoding
+    private static final int STEP = 1024;
+
+    private static final Map<String, WaveformPeaks> recent = new LinkedHashMap<String, WaveformPeaks>(32, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, WaveformPeaks> eldest) {
+            return size() > CACHED;
+        }
+    };
+
+    private static ExecutorService worker;
+    // Track the view waits for; older requests are dropped before decoding
+    private static volatile String wanted;
+
+    final long size;
+    final long mtime;
+    /** Lowest and highest sample per slice, full scale being -128 and 127 */
+    final byte[] min;
+    final byte[] max;
+
+    private WaveformPeaks(long size, long mtime, byte[] min, byte[] max) {
+        this.size = size;
+        this.mtime = mtime;
+        this.min = min;
+        this.max = max;
+    }
+
+    /** Peaks of a track if they are in memory and still match the file, else null */
+    public static WaveformPeaks cached(String path) {
+        WaveformPeaks p;
+        synchronized (recent) {
+            p = recent.get(path);
+        }
+        if (p == null) {
+            return null;
+        }
+        Path file = Paths.get(path);
+        try {
+            return p.size == Files.size(file) && p.mtime == Files.getLastModifiedTime(file).toMillis() ? p : null;
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Loads a track's peaks from disk, or decodes the track for them, in the
+     * background. Asking for another track first drops this request unless
+     * it is already being decoded.
+     * @param done receives the peaks on the worker thread; not called if
+     *        the track cannot be decoded or the request was dropped
+     */
+    public static void load(String path, Consumer<WaveformPeaks> done) {
+        wanted = path;
+        synchronized (WaveformPeaks.class) {
+            if (worker == null) {
+                worker = Executors.newSingleThreadExecutor(r -> {
+                    Thread t = new Thread(r, "waveform");
+                    t.setDaemon(true);
+                    t.setPriority(Thread.MIN_PRIORITY);
+                    return t;
+                });
+            }
+        }
+        worker.execute(() -> {
+            if (!path.equals(wanted)) {
+                return;
+            }
+            try {
+                WaveformPeaks p = get(path);
+                if (p != null) {
+                    done.accept(p);
+                }
+            } catch (IOException | RuntimeException ex) {
+                System.out.println("⚠️ No waveform for " + path + ": " + ex.getMessage());
+            }
+        });
+    }
+
+    /** Returns the peaks from memory, from disk, or by decoding, in that order */
+    static WaveformPeaks get(String path) throws IOException {
+        WaveformPeaks p = cached(path);
+        if (p != null) {
+            return p;
+        }
+        Path file = Paths.get(path);
+        long size = Files.size(file);
+        long mtime = Files.getLastModifiedTime(file).toMillis();
+        Path saved = DIR.resolve(Long.toHexString(PlayStats.hash(path)) + ".peaks");
+        p = read(saved, path, size, mtime);
+        if (p == null) {
+            p = compute(path, size, mtime);
+            if (p == null) {
+                return null;
+            }
+            save(saved, path, p);
+        }
+        synchronized (recent) {
+            recent.put(path, p);
+        }
+        return p;
+    }
+
+    /**
+     * Decodes the track, keeping the extremes of every STEP frames, then
+     * folds those into the final slices. The track's length need not be
+     * known up front.
+     */
+    static WaveformPeaks compute(String path, long size, long mtime) throws IOException {
+        short[] lows = new short[4096];
+        short[] highs = new short[4096];
+        int steps = 0;
+        try (Decoder d = Decoders.open(path)) {
+            int frameSize = d.format().getFrameSize();
+            long skip = d.leadingFrames() * frameSize;
+            long keep = d.audioFrames() >= 0 ? d.audioFrames() * frameSize : Long.MAX_VALUE;
+            byte[] buf = new byte[PcmPool.CHUNK - PcmPool.CHUNK % frameSize];
+            int lo = Short.MAX_VALUE;
+            int hi = Short.MIN_VALUE;
+            int frames = 0;
+            int n;
+            while (keep > 0 && (n = d.read(buf, 0, buf.length)) >= 0) {
+                int off = (int) Math.min(skip, n);
+                skip -= off;
+                int end = off + (int) Math.min(n - off, keep);
+                keep -= end - off;
+                for (int i = off; i < end; i += frameSize) {
+                    for (int c = 0; c < frameSize; c += 2) {
+                        int s = (short) ((buf[i + c] & 0xFF) | (buf[i + c + 1] << 8));
+                        lo = Math.min(lo, s);
+                        hi = Math.max(hi, s);
+                    }
+                    if (++frames == STEP) {
+                        if (steps == lows.length) {
+                            lows = Arrays.copyOf(lows, steps * 2);
+                            highs = Arrays.copyOf(highs, steps * 2);
+                        }
+                        lows[steps] = (short) lo;
+                        highs[steps++] = (short) hi;
+                        lo = Short.MAX_VALUE;
+                        hi = Short.MIN_VALUE;
+                        frames = 0;
+                    }
+                }
+            }
+            if (frames > 0) {
+                if (steps == lows.length) {
+                    lows = Arrays.copyOf(lows, steps + 1);
+                    highs = Arrays.copyOf(highs, steps + 1);
+                }
+                lows[steps] = (short) lo;
+                highs[steps++] = (short) hi;
+            }
+        }
+        if (steps == 0) {
+            return null;
+        }
+
+        byte[] min = new byte[BUCKETS];
+        byte[] max = new byte[BUCKETS];
+        for (int b = 0; b < BUCKETS; b++) {
+            // Slices shorter than a step repeat it
+            int from = (int) ((long) b * steps / BUCKETS);
+            int to = Math.max(from + 1, (int) ((long) (b + 1) * steps / BUCKETS));
+            int lo = Short.MAX_VALUE;
+            int hi = Short.MIN_VALUE;
+            for (int i = from; i < to; i++) {
+                lo = Math.min(lo, lows[i]);
+                hi = Math.max(hi, highs[i]);
+            }
+            min[b] = (byte) (lo >> 8);
+            max[b] = (byte) (hi >> 8);
+        }
+        return new WaveformPeaks(size, mtime, min, max);
+    }
+
+    private static WaveformPeaks read(Path saved, String path, long size, long mtime) {
+        if (!Files.isRegularFile(saved)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(saved)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || !in.readUTF().equals(path)
+                    || in.readLong() != size || in.readLong() != mtime || in.readInt() != BUCKETS) {
+                return null;
+            }
+            byte[] min = new byte[BUCKETS];
+            byte[] max = new byte[BUCKETS];
+            in.readFully(min);
+            in.readFully(max);
+            return new WaveformPeaks(size, mtime, min, max);
+        } catch (IOException | RuntimeException ex) {
+            return null;
+        }
+    }
+
+    private static void save(Path saved, String path, WaveformPeaks p) {
+        try {
+            Files.createDirectories(saved.getParent());
+            Path tmp = saved.resolveSibling(saved.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(path);
+                out.writeLong(p.size);
+                out.writeLong(p.mtime);
+                out.writeInt(BUCKETS);
+                out.write(p.min);
+                out.write(p.max);
+            }
+            Files.move(tmp, saved, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            System.out.println("⚠️ Could not save waveform: " + ex.getMessage());
+        }
+    }
+}
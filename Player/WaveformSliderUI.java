@@ -0,0 +1,78 @@
+/**
+ * WaveformSliderUI.java
+ * -------------------------------------
+ * Look for the progress slider that draws the playing track's waveform as
+ * its track: the part already played in the slider's foreground colour,
+ * the rest in grey. Without peaks it draws the usual track.
+ *
+ * Painting reads the peak arrays directly, one column per pixel, so
+ * repainting the slider as the position moves allocates nothing.
+ */
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import javax.swing.JSlider;
+import javax.swing.plaf.basic.BasicSliderUI;
+
+public class WaveformSliderUI extends BasicSliderUI {
+
+    private static final Color UNPLAYED = new Color(110, 110, 110);
+
+    private WaveformPeaks peaks;
+
+    public WaveformSliderUI(JSlider slider) {
+        super(slider);
+    }
+
+    /** Shows a track's peaks, or the plain track for null */
+    public void setPeaks(WaveformPeaks peaks) {
+        this.peaks = peaks;
+        slider.repaint();
+    }
+
+    public WaveformPeaks getPeaks() {
+        return peaks;
+    }
+
+    @Override
+    public void paintTrack(Graphics g) {
+        WaveformPeaks p = peaks;
+        if (p == null) {
+            super.paintTrack(g);
+            return;
+        }
+        // The whole height of the slider, across the track's width
+        Rectangle r = contentRect;
+        int x0 = trackRect.x;
+        int w = trackRect.width;
+        if (w <= 0) {
+            return;
+        }
+        int mid = r.y + r.height / 2;
+        int half = Math.max(1, r.height / 2 - 1);
+        int played = xPositionForValue(slider.getValue());
+        int n = p.min.length;
+
+        g.setColor(slider.getForeground());
+        for (int x = 0; x < w; x++) {
+            if (x0 + x == played) {
+                g.setColor(UNPLAYED);
+            }
+            int from = (int) ((long) x * n / w);
+            int to = Math.max(from + 1, (int) ((long) (x + 1) * n / w));
+            int lo = 127;
+            int hi = -128;
+            for (int i = from; i < to; i++) {
+                lo = Math.min(lo, p.min[i]);
+                hi = Math.max(hi, p.max[i]);
+            }
+            g.drawLine(x0 + x, mid - hi * half / 128, x0 + x, mid - lo * half / 128);
+        }
+    }
+
+    @Override
+    public void paintFocus(Graphics g) {
+        // The waveform is enough to show where the slider is
+    }
+}
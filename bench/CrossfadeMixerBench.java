@@ -0,0 +1,50 @@
+/**
+ * CrossfadeMixerBench.java
+ * -------------------------------------
+ * Mixes a minute of synthetic stereo audio through a {@link CrossfadeMixer}
+ * in engine sized chunks, fading all the time, and prints the CPU time it
+ * took per second of audio and the bytes it allocated. Needs a JDK whose
+ * thread bean counts allocations (com.sun.management).
+ *
+ * Usage: java CrossfadeMixerBench
+ */
+
+import java.lang.management.ManagementFactory;
+
+public class CrossfadeMixerBench {
+
+    public static void main(String[] args) {
+        byte[] chunk = new byte[4096];
+        CrossfadeMixer mixer = new CrossfadeMixer(chunk);
+        PcmRing outgoing = new PcmRing(1 << 16);
+        byte[] src = new byte[chunk.length];
+        for (int i = 0; i < src.length; i++) {
+            src[i] = (byte) (i * 13);
+        }
+        int rate = 44_100;
+        int seconds = 60;
+        long chunks = (long) rate * 4 * seconds / chunk.length;
+
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean)
+                ManagementFactory.getThreadMXBean();
+        long tid = Thread.currentThread().getId();
+        for (int pass = 1; pass <= 3; pass++) {
+            long allocated = mx.getThreadAllocatedBytes(tid);
+            long cpu = mx.getCurrentThreadCpuTime();
+            // Fading all the time; the copies stand in for the decoders
+            for (long c = 0; c < chunks; c++) {
+                if (c % (3L * rate * 4 / chunk.length) == 0) {
+                    mixer.start(3L * rate, 0);
+                }
+                System.arraycopy(src, 0, chunk, 0, chunk.length);
+                outgoing.write(src, 0, src.length);
+                mixer.mix(chunk.length, outgoing, 2, 1f);
+            }
+            cpu = mx.getCurrentThreadCpuTime() - cpu;
+            allocated = mx.getThreadAllocatedBytes(tid) - allocated;
+            System.out.printf("pass %d: %d us CPU per second of audio (%.0fx real time on one core), "
+                    + "%d bytes allocated%n", pass, cpu / 1000 / seconds,
+                    seconds * 1e9 / Math.max(1, cpu), allocated);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+/**
+ * DecodersBench.java
+ * -------------------------------------
+ * Decodes a file several times the way playback does, through pooled
+ * buffers, and prints the bytes the decode loop allocated per second of
+ * audio, which should be nothing once the pools are warm. Needs a JDK
+ * whose thread bean counts allocations (com.sun.management).
+ *
+ * Usage: java DecodersBench file [passes]   (default 5 passes)
+ */
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+public class DecodersBench {
+
+    public static void main(String[] args) throws IOException {
+        String path = args[0];
+        int passes = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        com.sun.management.ThreadMXBean mx =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long tid = Thread.currentThread().getId();
+
+        for (int pass = 1; pass <= passes; pass++) {
+            byte[] chunk = PcmPool.chunk();
+            long frames = 0;
+            long start = System.nanoTime();
+            long allocated;
+            try (Decoder d = Decoders.open(path)) {
+                int frameSize = d.format().getFrameSize();
+                float rate = d.format().getFrameRate();
+                // Count only the steady loop, not opening the file
+                long before = mx.getThreadAllocatedBytes(tid);
+                int n;
+                while ((n = d.read(chunk, 0, chunk.length - chunk.length % frameSize)) >= 0) {
+                    frames += n / frameSize;
+                }
+                allocated = mx.getThreadAllocatedBytes(tid) - before;
+                double seconds = frames / rate;
+                System.out.printf("pass %d: %.1f s of audio in %d ms, %d bytes allocated (%.1f bytes/s of audio)%n",
+                        pass, seconds, (System.nanoTime() - start) / 1_000_000L, allocated,
+                        allocated / Math.max(seconds, 1e-9));
+            }
+            PcmPool.recycle(chunk);
+        }
+    }
+}
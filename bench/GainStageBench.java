@@ -0,0 +1,80 @@
+/**
+ * GainStageBench.java
+ * -------------------------------------
+ * Times a {@link GainStage} on one engine chunk against the obvious byte
+ * by byte float loop, and its fixed point loops on their own: samples in
+ * pairs, samples one by one for gains up to 1, and clamped for leveling
+ * gains above 1. Prints the time per second of stereo CD audio. Run it a
+ * second time with -XX:-UseSuperWord to compare with the scalar loops.
+ *
+ * Usage: java GainStageBench
+ */
+
+public class GainStageBench {
+
+    public static void main(String[] args) {
+        byte[] chunk = new byte[4096];
+        for (int i = 0; i < chunk.length; i++) {
+            chunk[i] = (byte) (i * 31);
+        }
+        short[] samples = new short[chunk.length / 2];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (short) (i * 31);
+        }
+        int[] pairs = new int[chunk.length / 4];
+        for (int i = 0; i < pairs.length; i++) {
+            pairs[i] = (samples[2 * i] & 0xFFFF) | samples[2 * i + 1] << 16;
+        }
+        GainStage stage = new GainStage(chunk);
+        stage.setGain(0.5f);
+        int rounds = 200_000;
+        // Chunks in one second of 44.1 kHz stereo 16-bit audio
+        double perSecond = 44_100.0 * 4 / chunk.length;
+
+        for (int pass = 1; pass <= 3; pass++) {
+            long t0 = System.nanoTime();
+            for (int r = 0; r < rounds; r++) {
+                scaleBytes(chunk, chunk.length, 0.999f);
+            }
+            long t1 = System.nanoTime();
+            for (int r = 0; r < rounds; r++) {
+                GainStage.scalePairs(pairs, 0, pairs.length, 32_700);
+            }
+            long t1b = System.nanoTime();
+            for (int r = 0; r < rounds; r++) {
+                // Volume below full: the branch without the clamp
+                GainStage.scale(samples, 0, samples.length, 32_700);
+            }
+            long t2 = System.nanoTime();
+            for (int r = 0; r < rounds; r++) {
+                // Leveling above 1: clamped; scales down again so samples do not stick at full scale
+                GainStage.scale(samples, 0, samples.length, 32_800);
+                GainStage.scale(samples, 0, samples.length, 32_700);
+            }
+            long t3 = System.nanoTime();
+            for (int r = 0; r < rounds; r++) {
+                stage.process(chunk.length, 2, 44_100f);
+            }
+            long t4 = System.nanoTime();
+            double bytes = (t1 - t0) / (double) rounds;
+            double paired = (t1b - t1) / (double) rounds;
+            double scale = (t2 - t1b) / (double) rounds;
+            double clamped = (t3 - t2) / (double) rounds - scale;
+            double whole = (t4 - t3) / (double) rounds;
+            System.out.printf("pass %d: byte loop %.0f ns/chunk, pairs %.2f ns/sample, scale %.2f ns/sample, "
+                    + "clamped %.2f ns/sample, stage %.0f ns/chunk; per second of audio %.1f us vs %.1f us%n",
+                    pass, bytes, paired / samples.length, scale / samples.length, clamped / samples.length, whole,
+                    bytes * perSecond / 1000, whole * perSecond / 1000);
+        }
+    }
+
+    /** The straightforward version: decode, multiply and encode each sample */
+    static void scaleBytes(byte[] b, int len, float g) {
+        for (int i = 0; i + 1 < len; i += 2) {
+            int s = (short) ((b[i] & 0xFF) | (b[i + 1] << 8));
+            s = (int) (s * g);
+            b[i] = (byte) s;
+            b[i + 1] = (byte) (s >> 8);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+/**
+ * LoudnessMeterCheck.java
+ * -------------------------------------
+ * Measures a 1 kHz stereo sine at -23 dBFS with a {@link LoudnessMeter}
+ * and prints the reading, which EBU R128 says must be -23 LUFS.
+ *
+ * Usage: java LoudnessMeterCheck
+ */
+
+public class LoudnessMeterCheck {
+
+    public static void main(String[] args) {
+        int rate = 48_000;
+        byte[] buf = new byte[rate * 4];
+        double amp = Math.pow(10, -23 / 20.0) * 32767;
+        for (int i = 0; i < rate; i++) {
+            short s = (short) Math.round(amp * Math.sin(2 * Math.PI * 1000 * i / rate));
+            for (int c = 0; c < 2; c++) {
+                buf[i * 4 + c * 2] = (byte) s;
+                buf[i * 4 + c * 2 + 1] = (byte) (s >> 8);
+            }
+        }
+        LoudnessMeter m = new LoudnessMeter();
+        m.reset(rate, 2);
+        for (int sec = 0; sec < 20; sec++) {
+            m.feed(buf, 0, buf.length);
+        }
+        m.finish();
+        System.out.printf("1 kHz at -23 dBFS: %.2f LUFS, peak %.3f, %d blocks%n",
+                m.integrated(), m.peak(), m.gatedBlocks());
+    }
+}
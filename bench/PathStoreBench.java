@@ -0,0 +1,51 @@
+/**
+ * PathStoreBench.java
+ * -------------------------------------
+ * Prints how much heap a synthetic library takes as plain path strings
+ * and in a {@link PathStore}.
+ *
+ * Usage: java PathStoreBench [tracks]   (default 1,000,000)
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class PathStoreBench {
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        Runtime rt = Runtime.getRuntime();
+
+        long before = usedHeap(rt);
+        List<String> strings = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            strings.add(samplePath(i));
+        }
+        long stringBytes = usedHeap(rt) - before;
+        strings.clear();
+        strings = null;
+
+        before = usedHeap(rt);
+        PathStore store = new PathStore();
+        for (int i = 0; i < n; i++) {
+            store.intern(samplePath(i));
+        }
+        long storeBytes = usedHeap(rt) - before;
+
+        System.out.println(n + " paths as String:   " + stringBytes / n + " bytes/track");
+        System.out.println(n + " paths in PathStore: " + storeBytes / n + " bytes/track (estimate "
+                + store.footprintBytes() / n + ")");
+    }
+
+    private static String samplePath(int i) {
+        return "/music/library/Artist " + (i / 1000) + "/Album " + (i / 12) + "/"
+                + String.format("%02d", i % 12) + " - Some Track Title " + i + ".mp3";
+    }
+
+    private static long usedHeap(Runtime rt) {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+}
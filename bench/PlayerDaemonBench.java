@@ -0,0 +1,54 @@
+/**
+ * PlayerDaemonBench.java
+ * -------------------------------------
+ * Sends pings to a running {@link PlayerDaemon} one after another and
+ * prints the round trip times.
+ *
+ * Usage: java PlayerDaemonBench [rounds] [--socket path]
+ *        (default 10,000 rounds on the daemon's default socket)
+ */
+
+import java.io.IOException;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+public class PlayerDaemonBench {
+
+    public static void main(String[] args) throws IOException {
+        Path socket = PlayerDaemon.SOCKET;
+        int rounds = 10_000;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--socket") && i + 1 < args.length) {
+                socket = Paths.get(args[++i]);
+            } else {
+                rounds = Integer.parseInt(args[i]);
+            }
+        }
+
+        try (SocketChannel ch = SocketChannel.open(UnixDomainSocketAddress.of(socket))) {
+            ByteBuffer ping = ByteBuffer.wrap("ping\n".getBytes(StandardCharsets.UTF_8));
+            ByteBuffer in = ByteBuffer.allocate(64);
+            long[] ns = new long[rounds];
+            for (int i = -1000; i < rounds; i++) {
+                long t0 = System.nanoTime();
+                ping.rewind();
+                ch.write(ping);
+                in.clear();
+                while (in.position() == 0 || in.get(in.position() - 1) != '\n') {
+                    ch.read(in);
+                }
+                if (i >= 0) {
+                    ns[i] = System.nanoTime() - t0;
+                }
+            }
+            Arrays.sort(ns);
+            System.out.printf("%d round trips: median %.1f us, 99%% %.1f us, max %.1f us%n", rounds,
+                    ns[rounds / 2] / 1e3, ns[rounds * 99 / 100] / 1e3, ns[rounds - 1] / 1e3);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/**
+ * PlayerZoneBench.java
+ * -------------------------------------
+ * Plays 1, 2, 4 ... up to 32 {@link PlayerZone}s (or the count given with
+ * -n) at once, each with its own queue of the given audio files on
+ * repeat, into sinks that take audio at 20 times real time (or -x).
+ * Prints the audio played per second, the CPU that took, and the CPU per
+ * second of audio: while there are cores to spare, the throughput should
+ * grow with the zones and the cost per second of audio stay flat.
+ * The decoded audio cache is off, so every stream really decodes. Needs a
+ * JDK whose OS bean reports process CPU time (com.sun.management).
+ *
+ * Usage: java PlayerZoneBench [-n zones] [-s seconds] [-x speed] file...
+ */
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.LockSupport;
+import javax.sound.sampled.AudioFormat;
+
+public class PlayerZoneBench {
+
+    public static void main(String[] args) throws InterruptedException {
+        int maxZones = 32;
+        int seconds = 3;
+        double speed = 20;
+        List<String> files = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-n")) {
+                maxZones = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-s")) {
+                seconds = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-x")) {
+                speed = Double.parseDouble(args[++i]);
+            } else {
+                files.add(args[i]);
+            }
+        }
+        if (files.isEmpty()) {
+            System.out.println("Usage: PlayerZoneBench [-n zones] [-s seconds] [-x speed] file...");
+            return;
+        }
+        PcmCache.setBudget(0);
+        com.sun.management.OperatingSystemMXBean os =
+                (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+        System.out.println(Runtime.getRuntime().availableProcessors() + " cores, " + files.size()
+                + " files, each zone at up to " + speed + "x real time");
+
+        // One event thread serves every zone; they only need it between tracks
+        ExecutorService events = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "zone-events");
+            t.setDaemon(true);
+            return t;
+        });
+        double single = 0;
+        for (int n = 1; ; n = Math.min(n * 2, maxZones)) {
+            List<PlayerZone> zones = new ArrayList<>();
+            List<Sink> sinks = new ArrayList<>();
+            for (int z = 0; z < n; z++) {
+                Sink sink = new Sink(speed);
+                PlayerZone zone = new PlayerZone("zone " + z, new IndexedList(), events, sink);
+                zones.add(zone);
+                sinks.add(sink);
+                events.execute(() -> {
+                    zone.setCountingPlays(false);
+                    zone.setRepeat(true);
+                    for (String f : files) {
+                        zone.enqueue(f);
+                    }
+                    zone.play();
+                });
+            }
+            // Let every zone open its first track before measuring
+            Thread.sleep(500);
+            double before = 0;
+            for (Sink s : sinks) {
+                before += s.seconds();
+            }
+            long cpu0 = os.getProcessCpuTime();
+            long t0 = System.nanoTime();
+            Thread.sleep(seconds * 1000L);
+            double wall = (System.nanoTime() - t0) / 1e9;
+            double cpu = (os.getProcessCpuTime() - cpu0) / 1e9;
+            double played = -before;
+            for (Sink s : sinks) {
+                played += s.seconds();
+            }
+            for (PlayerZone zone : zones) {
+                zone.close();
+            }
+
+            double rate = played / wall;
+            if (n == 1) {
+                single = rate;
+            }
+            System.out.printf("%2d zones: %7.0fx real time, %.2f cores busy, %.2f ms CPU per s of audio, "
+                    + "%.1f times one zone%n", n, rate, cpu / wall, cpu * 1000 / played, rate / single);
+            if (n >= maxZones) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * An output that takes audio at a fixed multiple of real time instead
+     * of at the sound card's pace, for measuring what the playback path
+     * costs without a card for every zone.
+     */
+    static final class Sink extends AudioOutput {
+
+        private final double speed;
+        private volatile AudioFormat format;
+        private volatile long frames;
+        private long startNs;
+
+        Sink(double speed) {
+            this.speed = speed;
+        }
+
+        @Override
+        int open(AudioFormat f) {
+            if (format != null && format.matches(f)) {
+                return 0;
+            }
+            format = f;
+            frames = 0;
+            startNs = System.nanoTime();
+            return 1;
+        }
+
+        @Override
+        int write(byte[] buf, int off, int len) {
+            AudioFormat f = format;
+            frames += len / f.getFrameSize();
+            // Hold the writer back while it is ahead of the set speed
+            long due = startNs + (long) (frames / f.getFrameRate() / speed * 1e9);
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            return len;
+        }
+
+        @Override
+        long framePosition() {
+            return format == null ? -1 : frames;
+        }
+
+        @Override
+        AudioFormat format() {
+            return format;
+        }
+
+        @Override
+        void stop() {
+        }
+
+        @Override
+        void start() {
+        }
+
+        @Override
+        void flush() {
+        }
+
+        @Override
+        void drain() {
+        }
+
+        /** Seconds of audio taken so far */
+        double seconds() {
+            AudioFormat f = format;
+            return f == null ? 0 : frames / f.getFrameRate();
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/**
+ * SearchIndexBench.java
+ * -------------------------------------
+ * Indexes a synthetic library in a {@link SearchIndex} and prints the time
+ * taken by each keystroke of a typed query.
+ *
+ * Usage: java SearchIndexBench [tracks]   (default 1,000,000)
+ */
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+public class SearchIndexBench {
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        SearchIndex index = new SearchIndex();
+        String[] texts = new String[n];
+        long start = System.nanoTime();
+        for (int i = 0; i < n; i++) {
+            texts[i] = String.format("%02d", i % 12) + " - Track " + i + " Artist " + (i / 1000)
+                    + " Album " + (i / 12);
+            index.add(i, texts[i]);
+        }
+        System.out.println("Indexed " + n + " tracks in " + (System.nanoTime() - start) / 1_000_000L
+                + " ms: " + index.stats());
+
+        BitSet all = new BitSet(n);
+        all.set(0, n);
+        String typed = "artist 42 album 3507";
+        int rounds = 7;
+        long[][] us = new long[typed.length()][rounds];
+        int[] hits = new int[typed.length()];
+        for (int round = 0; round < rounds; round++) {
+            index.clearRecent();
+            for (int k = 1; k <= typed.length(); k++) {
+                long t0 = System.nanoTime();
+                hits[k - 1] = index.search(typed.substring(0, k), all, id -> texts[id]).cardinality();
+                us[k - 1][round] = (System.nanoTime() - t0) / 1000;
+            }
+        }
+        for (int k = 1; k <= typed.length(); k++) {
+            Arrays.sort(us[k - 1]);
+            System.out.println(String.format("%-22s %8d hits %6d us (median of %d)",
+                    "\"" + typed.substring(0, k) + "\"", hits[k - 1], us[k - 1][rounds / 2], rounds));
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ * TrackCellRendererBench.java
+ * -------------------------------------
+ * Scrolls a list of synthetic tracks drawn by {@link TrackCellRenderer}
+ * off screen and prints how long a frame takes against the 16.7 ms budget
+ * of 60 fps.
+ *
+ * Usage: java TrackCellRendererBench [rows]   (default 1,000,000)
+ */
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import javax.swing.AbstractListModel;
+import javax.swing.JList;
+import javax.swing.JScrollPane;
+
+public class TrackCellRendererBench {
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int[] ids = new int[n];
+        for (int i = 0; i < n; i++) {
+            ids[i] = Player.paths.intern("/music/Artist " + (i / 1000) + "/Album " + (i / 12) + "/"
+                    + String.format("%02d", i % 12) + " - Some Track Title " + i + ".mp3");
+            TrackInfo t = new TrackInfo(0, 0);
+            t.durationMs = 60_000 + i % 300_000;
+            Player.setInfo(ids[i], t);
+        }
+
+        class Rows extends AbstractListModel<String> implements TrackRows {
+            @Override
+            public int getSize() {
+                return n;
+            }
+
+            @Override
+            public String getElementAt(int row) {
+                return Player.displayName(ids[row]);
+            }
+
+            @Override
+            public int idAt(int row) {
+                return ids[row];
+            }
+        }
+        JList<String> list = new JList<>(new Rows());
+        list.setCellRenderer(new TrackCellRenderer());
+        list.setPrototypeCellValue("00 - A fairly long track title by an artist.mp3");
+        list.setBackground(Color.BLACK);
+        list.setForeground(Color.WHITE);
+        JScrollPane pane = new JScrollPane(list);
+        pane.setSize(367, 483);
+        pane.doLayout();
+        pane.getViewport().doLayout();
+
+        BufferedImage img = new BufferedImage(367, 483, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = img.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        int rowHeight = list.getFixedCellHeight();
+        int frames = 3000;
+        long[] ns = new long[frames];
+        int y = 0;
+        for (int f = 0; f < frames; f++) {
+            // Fling down three rows a frame, with a jump every second
+            y = f % 60 == 59 ? (int) (f * 7919L % n) * rowHeight : y + 3 * rowHeight;
+            y = Math.min(y, (n - 20) * rowHeight);
+            long t0 = System.nanoTime();
+            pane.getViewport().setViewPosition(new Point(0, y));
+            pane.paint(g);
+            ns[f] = System.nanoTime() - t0;
+        }
+        Arrays.sort(ns, frames / 3, frames); // first third is warm-up
+        long[] warm = Arrays.copyOfRange(ns, frames / 3, frames);
+        System.out.println(n + " rows, " + warm.length + " frames: median "
+                + warm[warm.length / 2] / 1000 + " us, 99th percentile "
+                + warm[warm.length * 99 / 100] / 1000 + " us, worst "
+                + warm[warm.length - 1] / 1000 + " us (60 fps = 16667 us)");
+    }
+}